@@ -0,0 +1,118 @@
+package benchmark;
+
+import calculator.BatchExpression;
+import calculator.Calculator;
+import compiler.DoubleCompiler;
+import compiler.DoubleCompiler.CompiledDouble;
+import evaluator.EvaluationContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+
+// One formula over whole input columns: BigDecimal and double, sequential and parallel, against the row-by-row
+// loop that evaluateDouble used before it ran column kernels.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchBenchmarks {
+    private static final List<String> INPUTS = List.of("x", "y", "z");
+    private static final String FORMULA = "test(x,y,z)*2+x/y";
+    // Only arithmetic, so every kernel vectorizes; the formula above spends most of its time in Math.pow.
+    private static final String ARITHMETIC = "x*x*0.5+y*z-x/y+3";
+
+    @State(Scope.Benchmark)
+    public static class BigDecimalColumns {
+        @Param("1000000")
+        public int rows;
+
+        Map<String, BigDecimal[]> columns;
+        BatchExpression batch;
+
+        @Setup
+        public void setUp() {
+            columns = Fixtures.bigDecimalColumns(rows);
+            batch = Calculator.batch(FORMULA, INPUTS);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DoubleColumns {
+        @Param("1000000")
+        public int rows;
+
+        Map<String, double[]> columns;
+        BatchExpression batch;
+        BatchExpression arithmetic;
+        EvaluationContext context;
+        CompiledDouble scalar;
+        CompiledDouble arithmeticScalar;
+
+        @Setup
+        public void setUp() {
+            columns = Fixtures.doubleColumns(rows);
+            batch = Calculator.batch(FORMULA, INPUTS);
+            arithmetic = Calculator.batch(ARITHMETIC, INPUTS);
+            context = new EvaluationContext();
+            scalar = DoubleCompiler.compile(parse(tokenize(FORMULA)), INPUTS, context);
+            arithmeticScalar = DoubleCompiler.compile(parse(tokenize(ARITHMETIC)), INPUTS, context);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal[] bigDecimal(BigDecimalColumns state) {
+        return state.batch.evaluate(state.columns);
+    }
+
+    @Benchmark
+    public BigDecimal[] bigDecimalParallel(BigDecimalColumns state) {
+        return state.batch.evaluateParallel(state.columns);
+    }
+
+    @Benchmark
+    public double[] doubles(DoubleColumns state) {
+        return state.batch.evaluateDouble(state.columns);
+    }
+
+    @Benchmark
+    public double[] doublesParallel(DoubleColumns state) {
+        return state.batch.evaluateDoubleParallel(state.columns);
+    }
+
+    @Benchmark
+    public double[] doublesScalar(DoubleColumns state) {
+        return scalarLoop(state.scalar, state.columns, state.context);
+    }
+
+    @Benchmark
+    public double[] arithmetic(DoubleColumns state) {
+        return state.arithmetic.evaluateDouble(state.columns);
+    }
+
+    @Benchmark
+    public double[] arithmeticScalar(DoubleColumns state) {
+        return scalarLoop(state.arithmeticScalar, state.columns, state.context);
+    }
+
+    private static double[] scalarLoop(CompiledDouble compiled, Map<String, double[]> columns, EvaluationContext context) {
+        double[] x = columns.get("x");
+        double[] y = columns.get("y");
+        double[] z = columns.get("z");
+        double[] result = new double[x.length];
+        double[] frame = new double[3];
+        for (int row = 0; row < result.length; row++) {
+            frame[0] = x[row];
+            frame[1] = y[row];
+            frame[2] = z[row];
+            result[row] = compiled.evaluate(frame, context);
+        }
+        return result;
+    }
+}
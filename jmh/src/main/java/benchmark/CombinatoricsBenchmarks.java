@@ -0,0 +1,23 @@
+package benchmark;
+
+import math.Combinatorics;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+// Factorials are cached, so the stage benchmarks mostly measure hits; cycling n past the cache measures the work.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CombinatoricsBenchmarks {
+    private int next;
+
+    @Benchmark
+    public BigInteger factorialUncached() {
+        return Combinatorics.factorial(20_000 + next++ % 1024);
+    }
+}
@@ -0,0 +1,59 @@
+package benchmark;
+
+import evaluator.EvaluationContext;
+import lexer.Token.TokenType;
+import org.openjdk.jmh.annotations.*;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Trees far deeper than the call stack allows for plain recursion: parsing them, and evaluating them with the
+// hybrid default, fully iteratively and, on an oversized stack, fully recursively.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeepBenchmarks {
+    @Param({"chain-100k", "power-100k", "nested-50k"})
+    public String input;
+
+    private TokenType[] tokens;
+    private NodeType tree;
+    private EvaluationContext context;
+
+    @Setup
+    public void setUp() {
+        tokens = tokenize(Fixtures.input(input));
+        // Not optimized: folding would reduce each input to a single number.
+        tree = resolve(parse(tokens));
+        context = new EvaluationContext();
+    }
+
+    @Benchmark
+    public NodeType parser() {
+        return parse(tokens);
+    }
+
+    @Benchmark
+    public BigDecimal hybrid() {
+        return evaluate(tree, context);
+    }
+
+    @Benchmark
+    public BigDecimal iterative() {
+        return evaluate(tree, context, 0);
+    }
+
+    @Benchmark
+    public long recursive() {
+        return Fixtures.onLargeStack(() -> evaluate(tree, context, Integer.MAX_VALUE).scale());
+    }
+}
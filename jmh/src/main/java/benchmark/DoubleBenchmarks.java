@@ -0,0 +1,63 @@
+package benchmark;
+
+import compiler.Compiler;
+import compiler.Compiler.CompiledExpression;
+import compiler.DoubleCompiler;
+import compiler.DoubleCompiler.CompiledDouble;
+import evaluator.EvaluationContext;
+import org.openjdk.jmh.annotations.*;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+
+// What double mode gains over BigDecimal for the same compiled expression: exact BigDecimal, BigDecimal rounded to
+// 16 digits (about a double's precision) and double. Run with -prof gc to see the double side allocate nothing,
+// user function calls and natives included.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DoubleBenchmarks {
+    @Param({"short", "long", "functions", "natives"})
+    public String input;
+
+    private EvaluationContext exact;
+    private EvaluationContext rounded;
+    private CompiledExpression compiled;
+    private CompiledDouble compiledDouble;
+
+    @Setup
+    public void setUp() {
+        String source = input.equals("natives")
+                ? "sqrt(2)*sin(1)+max(1,2,3)-pow(2,0.5)+abs(-3)*ln(10)+min(4,avg(5,6,7))"
+                : Fixtures.input(input);
+        NodeType tree = parse(tokenize(source));
+        exact = new EvaluationContext();
+        rounded = new EvaluationContext();
+        rounded.setMathContext(new MathContext(16));
+        compiled = Compiler.compile(tree, exact);
+        compiledDouble = DoubleCompiler.compile(tree, exact);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        return compiled.evaluate(Compiler.emptyFrame(), exact);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal16() {
+        return compiled.evaluate(Compiler.emptyFrame(), rounded);
+    }
+
+    @Benchmark
+    public double doubles() {
+        return compiledDouble.evaluate(DoubleCompiler.emptyFrame(), exact);
+    }
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Inputs shared by the benchmarks.
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static String input(String name) {
+        return switch (name) {
+            case "short" -> "1+2*3";
+            case "long" -> chain(200);
+            case "nested" -> nested(100);
+            case "functions" -> "test(1,2,3)+cube(2)+power(2,3)+sum(4,5)+sqrt(16)+test(cube(2),2,sum(1,1))";
+            case "suffixes" -> "5k*3m+2b-1t+7k*8m/4b";
+            case "factorial" -> "999!";
+            case "factorial-large" -> "20000!";
+            case "combinatorics" -> "nCr(1000,500)+nPr(500,100)";
+            case "chain-100k" -> chain(100_000);
+            case "power-100k" -> "1" + "^1".repeat(100_000);
+            case "nested-50k" -> "(".repeat(50_000) + "1" + "+1)".repeat(50_000);
+            default -> throw new IllegalArgumentException("Unknown input " + name);
+        };
+    }
+
+    static String chain(int terms) {
+        StringBuilder sb = new StringBuilder("1");
+        String operators = "+-*/";
+        for (int i = 1; i < terms; i++) {
+            sb.append(operators.charAt(i % operators.length())).append(i % 9 + 1);
+        }
+        return sb.toString();
+    }
+
+    static String nested(int depth) {
+        return "(".repeat(depth) + "1+2" + ")*2".repeat(depth);
+    }
+
+    static Map<String, BigDecimal[]> bigDecimalColumns(int rows) {
+        BigDecimal[] x = new BigDecimal[rows];
+        BigDecimal[] y = new BigDecimal[rows];
+        BigDecimal[] z = new BigDecimal[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = BigDecimal.valueOf(i);
+            y[i] = BigDecimal.valueOf(i % 13 + 1);
+            z[i] = BigDecimal.valueOf(i % 7);
+        }
+        return Map.of("x", x, "y", y, "z", z);
+    }
+
+    static Map<String, double[]> doubleColumns(int rows) {
+        double[] x = new double[rows];
+        double[] y = new double[rows];
+        double[] z = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i;
+            y[i] = i % 13 + 1;
+            z[i] = i % 7;
+        }
+        return Map.of("x", x, "y", y, "z", z);
+    }
+
+    // Runs 'operation' on a thread with a 1 GB stack, for the fully recursive evaluation of very deep trees.
+    static long onLargeStack(LongSupplier operation) {
+        long[] result = new long[1];
+        Thread thread = new Thread(null, () -> result[0] = operation.getAsLong(), "large-stack", 1L << 30);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return result[0];
+    }
+}
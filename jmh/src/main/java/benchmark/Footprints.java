@@ -0,0 +1,66 @@
+package benchmark;
+
+import compiler.Program;
+import compiler.StackCompiler;
+import parser.Node.*;
+import parser.Trees;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Usage: java benchmark.Footprints <out>
+// Estimated bytes per representation of each stage input, tree against flat program, one JSON object per line.
+// Not timed, so not a JMH benchmark; the jmh project's "footprints" task writes it next to the JMH results.
+public class Footprints {
+    public static void main(String[] args) throws IOException {
+        Path out = Path.of(args[0]);
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+            for (String name : List.of("short", "long", "nested", "functions", "suffixes", "factorial", "factorial-large", "combinatorics")) {
+                NodeType tree = parse(tokenize(Fixtures.input(name)));
+                NodeType resolved = resolve(tree);
+                Program program = StackCompiler.compile(tree);
+                String line = String.format("{\"name\":\"%s\",\"nodes\":%d,\"treeBytes\":%d,\"instructions\":%d,\"programBytes\":%d}",
+                        name, nodes(resolved), footprint(resolved), program.length(), program.footprint());
+                writer.println(line);
+                System.out.println(line);
+            }
+        }
+    }
+
+    private static long nodes(NodeType tree) {
+        long[] count = {0};
+        Trees.forEach(tree, node -> count[0]++);
+        return count[0];
+    }
+
+    // Shallow bytes with compressed oops for the nodes and their argument lists, estimated on the same terms as
+    // Program.footprint: literals, tokens and natives are shared between the two and not counted.
+    private static long footprint(NodeType tree) {
+        long[] bytes = {0};
+        Trees.forEach(tree, node -> bytes[0] += switch (node) {
+            case NumberNode n -> 16;
+            case VariableNode v -> 16;
+            case BinaryOperationNode b -> 24;
+            case PrefixOperationNode p -> 24;
+            case SuffixOperationNode s -> 24;
+            case LocalNode l -> 24;
+            case GlobalNode g -> 24;
+            case FunctionNode f -> 24 + list(f.args().size());
+            case CallNode c -> 24 + list(c.args().size());
+            case NativeFunctionNode n -> 24 + list(n.args().size());
+        });
+        return bytes[0];
+    }
+
+    private static long list(int size) {
+        return 24 + ((16 + 4L * size + 7) & ~7L);
+    }
+}
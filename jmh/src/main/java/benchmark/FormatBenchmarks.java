@@ -0,0 +1,87 @@
+package benchmark;
+
+import calculator.Calculator.CalcResult;
+import calculator.ResultFormatter;
+import org.openjdk.jmh.annotations.*;
+import streaming.StreamEvaluator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Formatting results as strings and into a reused buffer, and evaluating and writing a file of statements.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmarks {
+    @State(Scope.Thread)
+    public static class Values {
+        @Param({"integer", "fraction", "large"})
+        public String value;
+
+        CalcResult result;
+        ResultFormatter formatter;
+        StringBuilder out;
+
+        @Setup
+        public void setUp() {
+            result = new CalcResult(switch (value) {
+                case "integer" -> new BigDecimal("123456789000");
+                case "fraction" -> new BigDecimal("-1234567.89100000000000");
+                case "large" -> BigDecimal.valueOf(2).pow(200);
+                default -> throw new IllegalArgumentException("Unknown value " + value);
+            });
+            formatter = new ResultFormatter();
+            out = new StringBuilder();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Statements {
+        byte[] input;
+        StreamEvaluator evaluator;
+
+        // The results are mostly formatting work once the 700 distinct statements are cached.
+        @Setup
+        public void setUp() {
+            StringBuilder statements = new StringBuilder();
+            for (int i = 0; i < 10_000; i++) statements.append(i % 100).append("*12345.678+").append(i % 7).append('\n');
+            input = statements.toString().getBytes(StandardCharsets.UTF_8);
+            evaluator = new StreamEvaluator();
+        }
+    }
+
+    @Benchmark
+    public String commas(Values state) {
+        return state.result.commas();
+    }
+
+    @Benchmark
+    public String round(Values state) {
+        return state.result.round(4);
+    }
+
+    @Benchmark
+    public String scientific(Values state) {
+        return state.result.scientific();
+    }
+
+    @Benchmark
+    public int commasAppendable(Values state) throws IOException {
+        state.out.setLength(0);
+        state.result.commas(state.formatter, state.out);
+        return state.out.length();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long stream(Statements state) throws IOException {
+        return state.evaluator.evaluate(Channels.newChannel(new ByteArrayInputStream(state.input)), OutputStream.nullOutputStream());
+    }
+}
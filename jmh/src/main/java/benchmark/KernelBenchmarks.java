@@ -0,0 +1,57 @@
+package benchmark;
+
+import calculator.BatchExpression;
+import calculator.Calculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Eight passes of one column kernel, and a mix of them, over columns small enough to stay in cache, so the loops
+// are measured rather than memory. "columns" runs the Vector API kernels, "columnsSuperWord" the plain loops C2
+// auto-vectorizes, and "columnsScalar" the plain loops with auto-vectorization turned off.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KernelBenchmarks {
+    @Param({"add", "scale", "negate", "divide", "polynomial"})
+    public String kernel;
+
+    private Map<String, double[]> columns;
+    private BatchExpression batch;
+
+    @Setup
+    public void setUp() {
+        String formula = switch (kernel) {
+            case "add" -> "x" + "+y".repeat(8);
+            case "scale" -> "x" + "*1.5".repeat(8);
+            case "negate" -> "-(".repeat(8) + "x" + ")".repeat(8);
+            case "divide" -> "x" + "/y".repeat(8);
+            case "polynomial" -> "x*y+z*x-y*z+x*x";
+            default -> throw new IllegalArgumentException("Unknown kernel " + kernel);
+        };
+        columns = Fixtures.doubleColumns(4096);
+        batch = Calculator.batch(formula, List.of("x", "y", "z"));
+    }
+
+    @Benchmark
+    public double[] columns() {
+        return batch.evaluateDouble(columns);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcalc.vector=false")
+    public double[] columnsSuperWord() {
+        return batch.evaluateDouble(columns);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Dcalc.vector=false", "-XX:-UseSuperWord"})
+    public double[] columnsScalar() {
+        return batch.evaluateDouble(columns);
+    }
+}
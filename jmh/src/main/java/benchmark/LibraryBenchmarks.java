@@ -0,0 +1,62 @@
+package benchmark;
+
+import evaluator.EvaluationContext;
+import org.openjdk.jmh.annotations.*;
+import serialization.LibraryFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 2000 user functions, each calling the previous one: defined from source versus restored from a library file.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryBenchmarks {
+    private static final List<String> PARAMS = List.of("x", "y");
+
+    private List<String> bodies;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        bodies = new ArrayList<>(2000);
+        for (int i = 0; i < 2000; i++) {
+            bodies.add("x*" + i + "+y^2-sqrt(x)+cube(y)+" + (i > 0 ? "f" + (i - 1) + "(x,1)" : "pi") + "/3.25");
+        }
+        EvaluationContext source = new EvaluationContext();
+        for (int i = 0; i < bodies.size(); i++) source.defineFunction("f" + i, PARAMS, bodies.get(i));
+        file = Files.createTempFile("calc-library", ".calc");
+        LibraryFile.write(file, LibraryFile.snapshot(source));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public int define() {
+        EvaluationContext context = new EvaluationContext();
+        for (int i = 0; i < bodies.size(); i++) context.defineFunction("f" + i, PARAMS, bodies.get(i));
+        return context.getFunctions().size();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return LibraryFile.read(file).functions().size();
+    }
+
+    @Benchmark
+    public int readAndInstall() throws IOException {
+        EvaluationContext context = new EvaluationContext();
+        LibraryFile.install(LibraryFile.read(file), context);
+        return context.getFunctions().size();
+    }
+}
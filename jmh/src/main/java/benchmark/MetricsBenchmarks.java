@@ -0,0 +1,62 @@
+package benchmark;
+
+import calculator.CalculatorSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+// The cost of stage metrics: each case runs once in a fork without them and once in a fork with -Dcalc.metrics=true.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsBenchmarks {
+    private static final String[] INPUTS = {"1+2*3", "4-5/6"};
+
+    private CalculatorSession session;
+    // A one-entry cache alternating two inputs misses every time, so lexing and parsing are measured too.
+    private CalculatorSession missing;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        session = new CalculatorSession();
+        missing = new CalculatorSession(1);
+    }
+
+    @Benchmark
+    public BigDecimal calc() {
+        return session.calc("1+2*3").raw();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcalc.metrics=true")
+    public BigDecimal calcMeasured() {
+        return calc();
+    }
+
+    @Benchmark
+    public String format() {
+        return session.calc("123456789*1000").commas();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcalc.metrics=true")
+    public String formatMeasured() {
+        return format();
+    }
+
+    @Benchmark
+    public BigDecimal calcMiss() {
+        return missing.calc(INPUTS[next++ & 1]).raw();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dcalc.metrics=true")
+    public BigDecimal calcMissMeasured() {
+        return calcMiss();
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import calculator.CalculatorSession;
+import org.openjdk.jmh.annotations.*;
+import pipeline.Pipeline;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One operation is a whole run of 10k expressions; compare across thread counts for scaling.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmarks {
+    private List<String> inputs;
+
+    @State(Scope.Benchmark)
+    public static class Threads {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+    }
+
+    @Setup
+    public void setUp() {
+        inputs = new ArrayList<>(10_000);
+        for (int i = 0; i < 10_000; i++) {
+            inputs.add(i + "*2+test(" + i % 9 + ",2,3)/7-cube(" + i % 5 + ")");
+        }
+    }
+
+    @Benchmark
+    public List<String> platform(Threads threads) {
+        try (Pipeline pipeline = Pipeline.platform(threads.threads)) {
+            return pipeline.evaluateAll(inputs);
+        }
+    }
+
+    @Benchmark
+    public List<String> virtual() {
+        try (Pipeline pipeline = Pipeline.virtual(Runtime.getRuntime().availableProcessors() * 4)) {
+            return pipeline.evaluateAll(inputs);
+        }
+    }
+
+    @Benchmark
+    public long sequential() {
+        CalculatorSession session = new CalculatorSession();
+        long count = 0;
+        for (String input : inputs) {
+            BigDecimal value = session.calc(input).raw();
+            count += value.signum();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,42 @@
+package benchmark;
+
+import calculator.CalculatorSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.TimeUnit;
+
+// The cost of a session MathContext from 16 to 1000 digits, against the default exact arithmetic (digits = 0).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrecisionBenchmarks {
+    @Param({"arithmetic", "functions"})
+    public String input;
+
+    @Param({"0", "16", "34", "100", "1000"})
+    public int digits;
+
+    private String source;
+    private CalculatorSession session;
+
+    @Setup
+    public void setUp() {
+        source = switch (input) {
+            case "arithmetic" -> "(1/3+2/7)*(5/11-1/13)^3+12.5*(1/9)";
+            case "functions" -> "sqrt(2)*pi/3+exp(0.5)-ln(7)+sin(1)";
+            default -> throw new IllegalArgumentException("Unknown input " + input);
+        };
+        session = new CalculatorSession();
+        session.setMathContext(new MathContext(digits));
+    }
+
+    @Benchmark
+    public BigDecimal calc() {
+        return session.calc(source).raw();
+    }
+}
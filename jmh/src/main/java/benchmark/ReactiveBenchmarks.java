@@ -0,0 +1,61 @@
+package benchmark;
+
+import calculator.CalculatorSession;
+import org.openjdk.jmh.annotations.*;
+import reactive.ReactiveEngine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// A 300-cell dashboard over three variables; each step changes one of them, touching a third of the cells.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactiveBenchmarks {
+    private static final String[] VARIABLES = {"a", "b", "c"};
+
+    private List<String> expressions;
+    private ReactiveEngine engine;
+    private CalculatorSession session;
+    private long step;
+
+    @Setup
+    public void setUp() {
+        expressions = new ArrayList<>(300);
+        for (int i = 0; i < 300; i++) {
+            String variable = VARIABLES[i % 3];
+            expressions.add(i < 3 ? variable + "*2+cube(" + i + ")" : variable + "*" + i + "+c" + (i - 3) + "/7+test(" + variable + ",2,3)");
+        }
+
+        engine = new ReactiveEngine();
+        session = new CalculatorSession();
+        for (String variable : VARIABLES) {
+            engine.set(variable, BigDecimal.ONE);
+            session.setVariable(variable, BigDecimal.ONE);
+        }
+        for (int i = 0; i < expressions.size(); i++) engine.register("c" + i, expressions.get(i));
+    }
+
+    @Benchmark
+    public long incremental() {
+        engine.set(VARIABLES[(int) (step % 3)], BigDecimal.valueOf(++step));
+        return engine.evaluations();
+    }
+
+    @Benchmark
+    public long recalculateAll() {
+        session.setVariable(VARIABLES[(int) (step % 3)], BigDecimal.valueOf(++step));
+        long count = 0;
+        for (int i = 0; i < expressions.size(); i++) {
+            BigDecimal value = session.calc(expressions.get(i)).raw();
+            session.setVariable("c" + i, value);
+            count += value.signum();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package benchmark;
+
+import calculator.CalculatorSession;
+import compiler.Compiler;
+import compiler.Compiler.CompiledExpression;
+import compiler.DoubleCompiler;
+import compiler.DoubleCompiler.CompiledDouble;
+import compiler.Program;
+import compiler.StackCompiler;
+import evaluator.EvaluationContext;
+import lexer.Token.TokenType;
+import lexer.TokenBuffer;
+import org.openjdk.jmh.annotations.*;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Each stage on its own, and the backends that evaluate the same tree, for short and long expressions, deep
+// nesting, many function calls, suffixes and factorials.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StageBenchmarks {
+    @Param({"short", "long", "nested", "functions", "suffixes", "factorial", "factorial-large", "combinatorics"})
+    public String input;
+
+    private String source;
+    private TokenType[] tokens;
+    private TokenBuffer buffer;
+    private TokenBuffer packed;
+    private NodeType tree;
+    private NodeType resolved;
+    private EvaluationContext context;
+    private CompiledExpression compiled;
+    private CompiledDouble compiledDouble;
+    private Program program;
+    private Program.Stack stack;
+    private CalculatorSession session;
+
+    @Setup
+    public void setUp() {
+        source = Fixtures.input(input);
+        tokens = tokenize(source);
+        buffer = new TokenBuffer();
+        packed = tokenize(source, new TokenBuffer());
+        tree = parse(tokens);
+        resolved = resolve(tree);
+        context = new EvaluationContext();
+        compiled = Compiler.compile(tree, context);
+        compiledDouble = DoubleCompiler.compile(tree, context);
+        program = StackCompiler.compile(tree);
+        stack = new Program.Stack();
+        session = new CalculatorSession();
+    }
+
+    @Benchmark
+    public TokenType[] lexer() {
+        return tokenize(source);
+    }
+
+    @Benchmark
+    public TokenBuffer lexerPacked() {
+        return tokenize(source, buffer);
+    }
+
+    @Benchmark
+    public NodeType parser() {
+        return parse(tokens);
+    }
+
+    @Benchmark
+    public NodeType parserPacked() {
+        return parse(packed);
+    }
+
+    @Benchmark
+    public BigDecimal resolved() {
+        return evaluate(resolved, context);
+    }
+
+    @Benchmark
+    public BigDecimal compiled() {
+        return compiled.evaluate(Compiler.emptyFrame(), context);
+    }
+
+    @Benchmark
+    public double compiledDouble() {
+        return compiledDouble.evaluate(DoubleCompiler.emptyFrame(), context);
+    }
+
+    @Benchmark
+    public BigDecimal stack() {
+        return program.evaluate(Compiler.emptyFrame(), context);
+    }
+
+    @Benchmark
+    public double stackDouble() {
+        return program.evaluateDouble(DoubleCompiler.emptyFrame(), context, stack);
+    }
+
+    @Benchmark
+    public BigDecimal calc() {
+        return session.calc(source).raw();
+    }
+
+    @Benchmark
+    public BigDecimal uncached() {
+        return evaluate(resolve(parse(tokenize(source))), context);
+    }
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import calculator.Calculator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Time to first result of a fresh JVM given one expression, the way scripts invoke the calculator.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmarks {
+    private static final String EXPRESSION = "cube(2)+sqrt(2)*pi";
+
+    private Path jar;
+    private Path archive;
+
+    // The archive is the one the build's cdsArchive task packages next to the jar, so that is what gets measured.
+    @Setup
+    public void setUp() throws URISyntaxException {
+        // CDS only archives classes loaded from jars, so the launches use the calculator jar alone.
+        jar = Path.of(Calculator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!jar.toString().endsWith(".jar")) throw new IllegalStateException("Startup benchmarks need the calculator jar, not " + jar);
+        archive = jar.resolveSibling("calculator.jsa");
+        if (!Files.exists(archive)) throw new IllegalStateException("No class data archive at " + archive + "; run the cdsArchive task");
+    }
+
+    @Benchmark
+    public int defaults() {
+        return launch();
+    }
+
+    @Benchmark
+    public int c1() {
+        return launch("-XX:TieredStopAtLevel=1");
+    }
+
+    @Benchmark
+    public int cdsC1() {
+        // -Xshare:on fails the launch rather than silently running without an archive that doesn't match.
+        return launch("-XX:SharedArchiveFile=" + archive, "-Xshare:on", "-XX:TieredStopAtLevel=1");
+    }
+
+    private int launch(String... options) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of(options));
+        command.addAll(List.of("-jar", jar.toString(), EXPRESSION));
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            byte[] output = process.getInputStream().readAllBytes();
+            if (process.waitFor() != 0) throw new IllegalStateException("Startup run failed: " + new String(output));
+            return output.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package Exceptions;
+
+// An evaluation was stopped because it would exceed its Budget; the expression itself may be perfectly valid.
+public class BudgetExceededException extends EvaluatorException {
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,51 +1,115 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.math.MathContext;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Scanner;
 
+// Usage: java Main                          interactive
+//        java Main <expression...>          print one result and exit; status 1 on error
+//        java Main --file <in> [--out <out>] evaluate a file of statements
+//
+// One expression per JVM is dominated by startup. Scripts calling it in a loop should use the AppCDS archive the
+// build writes next to the jar from a training run (class data is only archived from jars):
+//   java -XX:SharedArchiveFile=build/libs/calculator.jsa -XX:TieredStopAtLevel=1 -jar build/libs/calculator.jar "<expression>"
+// The archive is tied to the JDK build and the jar, so it has to be recreated whenever either changes; the build's
+// cdsArchive task does that with the jar. StartupBenchmarks in the jmh project measures time to first result with
+// and without it.
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("--file")) {
+            streamFile(Path.of(args[1]), args.length >= 4 && args[2].equals("--out") ? args[3] : null);
+            return;
+        }
+        if (args.length > 0) {
+            System.exit(evaluateOnce(String.join(" ", args)));
+        }
+
         boolean devMode = false;
         Scanner scanner = new Scanner(System.in);
-        System.out.println("Enter expressions to calculate. Type 'help' for help.");
-        calculator.Calculator.calc("1+1-1*1/1+pi-power(1,1)");
+        // Buffered, and flushed only when no more input is waiting: piped input is answered in bulk writes,
+        // while someone typing still sees each answer before the next prompt.
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 64 * 1024));
+        calculator.ResultFormatter formatter = new calculator.ResultFormatter();
+        out.println("Enter expressions to calculate. Type 'help' for help.");
 
         while (true) {
-            System.out.print("> ");
+            out.print("> ");
+            if (System.in.available() == 0) out.flush();
+            if (!scanner.hasNextLine()) break;
             String input = scanner.nextLine();
 
             if (input.equalsIgnoreCase("help")) {
-                System.out.print("Type dev for devMode\nType esc to exit\nExample:\n> 1+4\n5\n");
+                out.print("Type dev for devMode\nType precision <digits> to round every operation, 0 for exact\nType esc to exit\nExample:\n> 1+4\n5\n");
+                continue;
+            }
+
+            if (input.toLowerCase().startsWith("precision ")) {
+                try {
+                    int digits = Integer.parseInt(input.substring("precision ".length()).trim());
+                    calculator.Calculator.getDefaultSession().setMathContext(new MathContext(digits));
+                    out.printf("precision: %s\n", digits == 0 ? "exact" : digits + " digits");
+                } catch (IllegalArgumentException e) {
+                    out.printf("Error: %s\n", e.getMessage());
+                }
                 continue;
             }
 
             if (input.equalsIgnoreCase("esc")) {
-                System.out.println("Exiting.");
+                out.println("Exiting.");
                 break;
             }
 
             if (input.equalsIgnoreCase("dev")) {
                 devMode = !devMode;
-                System.out.printf("devMode: %b\n", devMode);
+                out.printf("devMode: %b\n", devMode);
                 continue;
             }
 
             try {
                 if (devMode) {
                     lexer.Token.TokenType[] tokens = lexer.Lexer.tokenize(input);
-                    System.out.println(Arrays.toString(tokens));
+                    out.println(Arrays.toString(tokens));
                     parser.Node.NodeType node = parser.Parser.parse(tokens);
-                    System.out.println(node.toString());
+                    out.println(node.toString());
                 }
-                var result = calculator.Calculator.calc(input);
-                System.out.println(result.commas());
+                calculator.Calculator.calc(input).commas(formatter, out);
+                out.println();
             } catch (Exception e) {
                 StackTraceElement element = e.getStackTrace()[0];
-                System.out.printf("Error: %s\n", e.getMessage());
+                out.printf("Error: %s\n", e.getMessage());
                 if (devMode) {
-                    System.out.printf("At: %s.%s (Line %s)\n", element.getClassName(), element.getMethodName(), element.getLineNumber());
+                    out.printf("At: %s.%s (Line %s)\n", element.getClassName(), element.getMethodName(), element.getLineNumber());
                 }
             }
         }
 
+        out.flush();
         scanner.close();
     }
+
+    private static int evaluateOnce(String input) {
+        try {
+            System.out.println(calculator.Calculator.calc(input).commas());
+            return 0;
+        } catch (Exception e) {
+            System.err.printf("Error: %s\n", e.getMessage());
+            return 1;
+        }
+    }
+
+    private static void streamFile(Path input, String output) throws IOException {
+        streaming.StreamEvaluator evaluator = new streaming.StreamEvaluator();
+        if (output == null) {
+            evaluator.evaluate(input, System.out);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(output)) {
+            evaluator.evaluate(input, out);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package calculator;
+
+import Exceptions.CalculatorException;
+import compiler.Compiler;
+import compiler.Compiler.CompiledExpression;
+import compiler.ColumnCompiler;
+import compiler.ColumnCompiler.CompiledColumns;
+import evaluator.EvaluationContext;
+import parser.Node.NodeType;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToIntFunction;
+
+// One expression compiled once and evaluated row by row over columns of inputs.
+// Function definitions are captured when the batch is created.
+public class BatchExpression {
+    private static final int CHUNK_SIZE = 4096;
+
+    private final List<String> inputs;
+    private final EvaluationContext context;
+    private final CompiledExpression compiled;
+    private final CompiledColumns compiledColumns;
+
+    BatchExpression(NodeType tree, List<String> inputs, EvaluationContext context) {
+        this.inputs = List.copyOf(inputs);
+        this.context = context;
+        this.compiled = Compiler.compile(tree, this.inputs, context);
+        this.compiledColumns = ColumnCompiler.compile(tree, this.inputs, context);
+    }
+
+    public List<String> inputs() {
+        return inputs;
+    }
+
+    public BigDecimal[] evaluate(Map<String, BigDecimal[]> columns) {
+        BigDecimal[][] ordered = order(columns, BigDecimal[].class);
+        BigDecimal[] result = new BigDecimal[rows(ordered, c -> c.length)];
+        evaluateRange(ordered, result, 0, result.length, context);
+        return result;
+    }
+
+    public BigDecimal[] evaluateParallel(Map<String, BigDecimal[]> columns) {
+        return evaluateParallel(columns, ForkJoinPool.commonPool());
+    }
+
+    public BigDecimal[] evaluateParallel(Map<String, BigDecimal[]> columns, ForkJoinPool pool) {
+        BigDecimal[][] ordered = order(columns, BigDecimal[].class);
+        BigDecimal[] result = new BigDecimal[rows(ordered, c -> c.length)];
+        pool.invoke(new Chunk(0, result.length, (from, to) -> evaluateRange(ordered, result, from, to, context.fork())));
+        return result;
+    }
+
+    public double[] evaluateDouble(Map<String, double[]> columns) {
+        double[][] ordered = order(columns, double[].class);
+        double[] result = new double[rows(ordered, c -> c.length)];
+        evaluateRange(ordered, result, 0, result.length, context);
+        return result;
+    }
+
+    public double[] evaluateDoubleParallel(Map<String, double[]> columns) {
+        return evaluateDoubleParallel(columns, ForkJoinPool.commonPool());
+    }
+
+    public double[] evaluateDoubleParallel(Map<String, double[]> columns, ForkJoinPool pool) {
+        double[][] ordered = order(columns, double[].class);
+        double[] result = new double[rows(ordered, c -> c.length)];
+        pool.invoke(new Chunk(0, result.length, (from, to) -> evaluateRange(ordered, result, from, to, context.fork())));
+        return result;
+    }
+
+    private void evaluateRange(BigDecimal[][] columns, BigDecimal[] result, int from, int to, EvaluationContext ctx) {
+        BigDecimal[] frame = new BigDecimal[columns.length];
+        MathContext mc = ctx.getMathContext();
+        for (int row = from; row < to; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                frame[i] = columns[i][row].round(mc);
+            }
+            // Each row is its own evaluation as far as the budget goes.
+            ctx.startBudget();
+            result[row] = compiled.evaluate(frame, ctx);
+        }
+    }
+
+    // Whole columns at a time rather than row by row, so the arithmetic runs in SIMD lanes.
+    private void evaluateRange(double[][] columns, double[] result, int from, int to, EvaluationContext ctx) {
+        compiledColumns.evaluate(columns, result, from, to, ctx);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C> C[] order(Map<String, C> columns, Class<C> type) {
+        C[] ordered = (C[]) Array.newInstance(type, inputs.size());
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = columns.get(inputs.get(i));
+            if (ordered[i] == null) throw new CalculatorException("Missing input column: " + inputs.get(i));
+        }
+        return ordered;
+    }
+
+    private static <C> int rows(C[] columns, ToIntFunction<C> length) {
+        if (columns.length == 0) return 1;
+        int rows = length.applyAsInt(columns[0]);
+        for (C column : columns) {
+            if (length.applyAsInt(column) != rows) throw new CalculatorException("Input columns must have the same length");
+        }
+        return rows;
+    }
+
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final RangeTask task;
+
+        private Chunk(int from, int to, RangeTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                task.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Chunk(from, mid, task), new Chunk(mid, to, task));
+        }
+    }
+}
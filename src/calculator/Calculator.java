@@ -1,53 +1,47 @@
 package calculator;
 
-import Exceptions.CalculatorException;
-import identifier.Variables;
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import metrics.StageEvent;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-
-import static evaluator.Evaluator.evaluate;
-import static lexer.Lexer.tokenize;
-import static parser.Parser.parse;
+import java.util.List;
 
 public class Calculator {
+    private static final CalculatorSession defaultSession = new CalculatorSession();
+
     public static class CalcResult {
+        private static final ThreadLocal<ResultFormatter> FORMATTERS = ThreadLocal.withInitial(ResultFormatter::new);
+
         private final BigDecimal value;
 
-        private CalcResult(BigDecimal value) {
+        public CalcResult(BigDecimal value) {
             this.value = value;
         }
 
         public String format() {
-            return value.stripTrailingZeros().scale() <= 0
-                    ? value.toBigInteger().toString()
-                    : value.stripTrailingZeros().toPlainString();
+            return FORMATTERS.get().plain(value);
         }
 
         public String commas() {
-            String formatted = format();
-            boolean negative = formatted.startsWith("-");
-            if (negative) formatted = formatted.substring(1);
-
-            int dotIndex = formatted.indexOf('.');
-            String intPart = (dotIndex >= 0) ? formatted.substring(0, dotIndex) : formatted;
-            String decPart = (dotIndex >= 0) ? formatted.substring(dotIndex) : "";
-
-            StringBuilder result = new StringBuilder();
+            ResultFormatter formatter = FORMATTERS.get();
+            if (!Metrics.ENABLED) return formatter.grouped(value);
+            StageEvent event = Metrics.begin();
+            String result = formatter.grouped(value);
+            Metrics.end(event, Stage.FORMAT, result.length());
+            return result;
+        }
 
-            for (int i = intPart.length() - 1, count = 0; i >= 0; i--, count++) {
-                if (count > 0 && count % 3 == 0) {
-                    result.append(',');
-                }
-                result.append(intPart.charAt(i));
+        // As commas(), written straight to 'out' with the separators of 'formatter'.
+        public void commas(ResultFormatter formatter, Appendable out) throws IOException {
+            if (!Metrics.ENABLED) {
+                formatter.grouped(value, out);
+                return;
             }
-
-            result.reverse();
-
-            if (negative) result.insert(0, '-');
-            result.append(decPart);
-
-            return result.toString();
+            StageEvent event = Metrics.begin();
+            formatter.grouped(value, out);
+            Metrics.end(event, Stage.FORMAT, formatter.length());
         }
 
         public BigDecimal raw() {
@@ -55,12 +49,11 @@ public class Calculator {
         }
 
         public String round(int places) {
-            if (places < 0) throw new CalculatorException("Decimal places must be non-negative");
-            return value.setScale(places, RoundingMode.HALF_UP).toPlainString();
+            return FORMATTERS.get().rounded(value, places);
         }
 
         public String scientific() {
-            return value.stripTrailingZeros().toEngineeringString();
+            return FORMATTERS.get().engineering(value);
         }
 
         @Override
@@ -70,8 +63,26 @@ public class Calculator {
     }
 
     public static CalcResult calc(String input) {
-        CalcResult result = new CalcResult(evaluate(parse(tokenize(input))));
-        Variables.set("ans", result.raw());
-        return result;
+        return defaultSession.calc(input);
+    }
+
+    public static CalcResult calcCompiled(String input) {
+        return defaultSession.calcCompiled(input);
+    }
+
+    public static double calcDouble(String input) {
+        return defaultSession.calcDouble(input);
+    }
+
+    public static BatchExpression batch(String input, List<String> inputs) {
+        return defaultSession.batch(input, inputs);
+    }
+
+    public static CalculatorSession getDefaultSession() {
+        return defaultSession;
+    }
+
+    public static ExpressionCache getCache() {
+        return defaultSession.getCache();
     }
 }
\ No newline at end of file
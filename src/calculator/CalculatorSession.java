@@ -0,0 +1,120 @@
+package calculator;
+
+import calculator.Calculator.CalcResult;
+import compiler.Compiler;
+import compiler.DoubleCompiler;
+import evaluator.Budget;
+import evaluator.EvaluationContext;
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import metrics.StageEvent;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+import static evaluator.Evaluator.evaluate;
+
+// Not thread-safe: use one session per thread. Sessions only share the read-only built-ins.
+public class CalculatorSession {
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    private final EvaluationContext context;
+    private final ExpressionCache cache;
+
+    public CalculatorSession() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    public CalculatorSession(int cacheCapacity) {
+        this(new EvaluationContext(), cacheCapacity);
+        context.setBudget(Budget.DEFAULT);
+    }
+
+    private CalculatorSession(EvaluationContext context, int cacheCapacity) {
+        this.context = context;
+        this.cache = new ExpressionCache(cacheCapacity, context);
+    }
+
+    public CalculatorSession fork() {
+        return new CalculatorSession(context.fork(), cache.capacity());
+    }
+
+    public CalcResult calc(String input) {
+        if (Metrics.ENABLED) return measuredCalc(input);
+        context.startBudget();
+        return remember(new CalcResult(evaluate(cache.get(input), context)));
+    }
+
+    private CalcResult measuredCalc(String input) {
+        Metrics.call();
+        try {
+            NodeType tree = cache.get(input);
+            StageEvent event = Metrics.begin();
+            context.startBudget();
+            BigDecimal value = evaluate(tree, context);
+            Metrics.end(event, Stage.EVALUATE, input.length());
+            return remember(new CalcResult(value));
+        } catch (RuntimeException e) {
+            Metrics.error(e);
+            throw e;
+        }
+    }
+
+    public CalcResult calcCompiled(String input) {
+        context.startBudget();
+        return remember(new CalcResult(cache.getCompiled(input).evaluate(Compiler.emptyFrame(), context)));
+    }
+
+    public double calcDouble(String input) {
+        context.startBudget();
+        double result = cache.getCompiledDouble(input).evaluate(DoubleCompiler.emptyFrame(), context);
+        if (Double.isFinite(result)) context.setVariable("ans", BigDecimal.valueOf(result));
+        return result;
+    }
+
+    public BatchExpression batch(String input, List<String> inputs) {
+        return new BatchExpression(cache.get(input), inputs, context);
+    }
+
+    private CalcResult remember(CalcResult result) {
+        context.setVariable("ans", result.raw());
+        return result;
+    }
+
+    public void setVariable(String name, BigDecimal value) {
+        context.setVariable(name, value);
+    }
+
+    public void setVariable(String name, String value) {
+        context.setVariable(name, new BigDecimal(value));
+    }
+
+    // Rounds every operation and built-in constant to 'mathContext'; MathContext.UNLIMITED (the default) is exact.
+    // Cached trees are optimized for one MathContext, so changing to a different one clears the expression cache.
+    public void setMathContext(MathContext mathContext) {
+        context.setMathContext(mathContext);
+    }
+
+    public MathContext getMathContext() {
+        return context.getMathContext();
+    }
+
+    // Limits each calc to this budget; Budget.UNLIMITED turns the checks off.
+    public void setBudget(Budget budget) {
+        context.setBudget(budget);
+    }
+
+    public void defineFunction(String name, List<String> params, String body) {
+        context.defineFunction(name, params, body);
+    }
+
+    public EvaluationContext getContext() {
+        return context;
+    }
+
+    public ExpressionCache getCache() {
+        return cache;
+    }
+}
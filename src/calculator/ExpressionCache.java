@@ -0,0 +1,182 @@
+package calculator;
+
+import compiler.Compiler.CompiledExpression;
+import compiler.DoubleCompiler;
+import compiler.DoubleCompiler.CompiledDouble;
+import evaluator.EvaluationContext;
+import identifier.Functions.Function;
+import lexer.TokenBuffer;
+import metrics.Metrics;
+import metrics.Metrics.Stage;
+import metrics.StageEvent;
+import parser.Node.*;
+import parser.Trees;
+
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static compiler.Compiler.compile;
+import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+public class ExpressionCache {
+    private static final class Entry {
+        private final NodeType tree;
+        private Map<String, Function> functions;
+        private CompiledExpression compiled;
+        private CompiledDouble compiledDouble;
+
+        private Entry(NodeType tree) {
+            this.tree = tree;
+        }
+    }
+
+    private final int capacity;
+    private final EvaluationContext context;
+    private final Map<String, Entry> entries;
+    private final TokenBuffer tokens = new TokenBuffer();
+    private MathContext mathContext;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ExpressionCache(int capacity, EvaluationContext context) {
+        if (capacity <= 0) throw new IllegalArgumentException("Cache capacity must be positive");
+        this.capacity = capacity;
+        this.context = context;
+        this.entries = new LinkedHashMap<>(capacity + 1, 1, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= ExpressionCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    public synchronized NodeType get(String input) {
+        return entry(input).tree;
+    }
+
+    public synchronized CompiledExpression getCompiled(String input) {
+        Entry entry = compiledEntry(input);
+        if (entry.compiled == null) entry.compiled = compile(entry.tree, context);
+        return entry.compiled;
+    }
+
+    public synchronized CompiledDouble getCompiledDouble(String input) {
+        Entry entry = compiledEntry(input);
+        if (entry.compiledDouble == null) entry.compiledDouble = DoubleCompiler.compile(entry.tree, context);
+        return entry.compiledDouble;
+    }
+
+    private Entry entry(String input) {
+        // Trees are optimized for one MathContext; a session that changes precision starts over. Setting an equal
+        // MathContext again, as 'precision 34' twice does, keeps the trees.
+        if (!context.getMathContext().equals(mathContext)) {
+            entries.clear();
+            mathContext = context.getMathContext();
+        }
+
+        Entry entry = entries.get(input);
+        if (entry != null) {
+            hits++;
+            if (Metrics.ENABLED) Metrics.cacheHit();
+            return entry;
+        }
+
+        misses++;
+        entry = new Entry(Metrics.ENABLED ? measuredTree(input) : resolve(optimize(parse(tokenize(input, tokens)), mathContext)));
+        entries.put(input, entry);
+        return entry;
+    }
+
+    private NodeType measuredTree(String input) {
+        Metrics.cacheMiss();
+        StageEvent lex = Metrics.begin();
+        tokenize(input, tokens);
+        Metrics.end(lex, Stage.LEX, input.length());
+
+        StageEvent parse = Metrics.begin();
+        NodeType tree = resolve(optimize(parse(tokens), mathContext));
+        Metrics.end(parse, Stage.PARSE, input.length());
+        Metrics.parsed(tokens.size(), Trees.depth(tree));
+        return tree;
+    }
+
+    // Compiled forms inline function bodies, so they are rebuilt whenever a function they reach is redefined.
+    private Entry compiledEntry(String input) {
+        Entry entry = entry(input);
+        if (entry.functions == null || !isCurrent(entry.functions)) {
+            entry.functions = calledFunctions(entry.tree);
+            entry.compiled = null;
+            entry.compiledDouble = null;
+        }
+        return entry;
+    }
+
+    private boolean isCurrent(Map<String, Function> functions) {
+        for (Map.Entry<String, Function> dependency : functions.entrySet()) {
+            if (context.findFunction(dependency.getKey()) != dependency.getValue()) return false;
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ExpressionCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), capacity, hits, misses, evictions);
+    }
+
+    // Every user function the tree reaches, through function bodies too, mapped to its current definition.
+    private Map<String, Function> calledFunctions(NodeType tree) {
+        Map<String, Function> result = new HashMap<>();
+        ArrayDeque<NodeType> pending = new ArrayDeque<>();
+        pending.push(tree);
+
+        while (!pending.isEmpty()) {
+            Trees.forEach(pending.pop(), node -> {
+                String name = switch (node) {
+                    case FunctionNode f -> f.function().identifier();
+                    case CallNode c -> c.function().identifier();
+                    default -> null;
+                };
+                if (name == null || result.containsKey(name)) return;
+
+                Function function = context.findFunction(name);
+                result.put(name, function);
+                if (function != null) pending.push(function.body());
+            });
+        }
+        return result;
+    }
+}
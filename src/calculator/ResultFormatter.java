@@ -0,0 +1,173 @@
+package calculator;
+
+import Exceptions.CalculatorException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.CharBuffer;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+// Lays results out in a reusable char buffer and copies that to the destination in one call, instead of building
+// the plain string, stripping, reversing and inserting as separate Strings. The unscaled digits are the only other
+// allocation for values of up to 18 digits. Not thread-safe: CalcResult keeps one per thread, streams their own.
+public final class ResultFormatter {
+    private final char groupingSeparator;
+    private final char decimalSeparator;
+    private final char minusSign;
+    private char[] digits = new char[32];
+    private char[] buffer = new char[64];
+    private int length;
+
+    // The separators CalcResult has always printed, whatever the default locale: 1,234.5 and -1.
+    public ResultFormatter() {
+        this(',', '.', '-');
+    }
+
+    // Groups of three with the locale's separators, e.g. 1.234,5 for Locale.GERMANY.
+    public ResultFormatter(Locale locale) {
+        this(DecimalFormatSymbols.getInstance(locale));
+    }
+
+    private ResultFormatter(DecimalFormatSymbols symbols) {
+        this(symbols.getGroupingSeparator(), symbols.getDecimalSeparator(), symbols.getMinusSign());
+    }
+
+    private ResultFormatter(char groupingSeparator, char decimalSeparator, char minusSign) {
+        this.groupingSeparator = groupingSeparator;
+        this.decimalSeparator = decimalSeparator;
+        this.minusSign = minusSign;
+    }
+
+    // Without trailing fractional zeros or an exponent: 1234.5, 1200.
+    public void plain(BigDecimal value, Appendable out) throws IOException {
+        layout(value, true, false);
+        copyTo(out);
+    }
+
+    // As plain, with the integer part grouped in threes: 1,234.5.
+    public void grouped(BigDecimal value, Appendable out) throws IOException {
+        layout(value, true, true);
+        copyTo(out);
+    }
+
+    // Exactly 'places' decimals, rounded half up and ungrouped: 1234.50.
+    public void rounded(BigDecimal value, int places, Appendable out) throws IOException {
+        layout(round(value, places), false, false);
+        copyTo(out);
+    }
+
+    // Exponents in multiples of three where BigDecimal would use one: 12.3E+6.
+    public void engineering(BigDecimal value, Appendable out) throws IOException {
+        layoutEngineering(value);
+        copyTo(out);
+    }
+
+    public String plain(BigDecimal value) {
+        layout(value, true, false);
+        return new String(buffer, 0, length);
+    }
+
+    public String grouped(BigDecimal value) {
+        layout(value, true, true);
+        return new String(buffer, 0, length);
+    }
+
+    public String rounded(BigDecimal value, int places) {
+        layout(round(value, places), false, false);
+        return new String(buffer, 0, length);
+    }
+
+    public String engineering(BigDecimal value) {
+        layoutEngineering(value);
+        return new String(buffer, 0, length);
+    }
+
+    // Characters produced by the last call.
+    public int length() {
+        return length;
+    }
+
+    private static BigDecimal round(BigDecimal value, int places) {
+        if (places < 0) throw new CalculatorException("Decimal places must be non-negative");
+        return value.setScale(places, RoundingMode.HALF_UP);
+    }
+
+    private void layout(BigDecimal value, boolean strip, boolean group) {
+        int count = unscaledDigits(value.unscaledValue());
+        long scale = value.scale();
+        if (strip) {
+            if (value.signum() == 0) scale = 0;
+            while (scale > 0 && digits[count - 1] == '0') {
+                count--;
+                scale--;
+            }
+        }
+
+        // A negative scale stands for zeros after the digits; a scale past the digits for zeros before them.
+        long integerDigits = Math.max(count - scale, 1);
+        long fractionDigits = Math.max(scale, 0);
+        long size = 1 + integerDigits + (group ? integerDigits / 3 : 0) + 1 + fractionDigits;
+        if (size > Integer.MAX_VALUE - 16) throw new CalculatorException("Result too long to format");
+        if (size > buffer.length) buffer = new char[(int) Math.max(size, buffer.length * 2L)];
+
+        char[] b = buffer;
+        int n = 0;
+        if (value.signum() < 0) b[n++] = minusSign;
+        if (count - scale <= 0) {
+            b[n++] = '0';
+        } else {
+            int integer = (int) integerDigits;
+            for (int i = 0; i < integer; i++) {
+                if (group && i > 0 && (integer - i) % 3 == 0) b[n++] = groupingSeparator;
+                b[n++] = i < count ? digits[i] : '0';
+            }
+        }
+        if (scale > 0) {
+            b[n++] = decimalSeparator;
+            for (long i = scale - count; i > 0; i--) b[n++] = '0';
+            for (int i = (int) Math.max(count - scale, 0); i < count; i++) b[n++] = digits[i];
+        }
+        length = n;
+    }
+
+    // BigDecimal's own layout is kept here; only its separators are swapped for this formatter's.
+    private void layoutEngineering(BigDecimal value) {
+        String text = value.stripTrailingZeros().toEngineeringString();
+        if (text.length() > buffer.length) buffer = new char[Math.max(text.length(), buffer.length * 2)];
+        text.getChars(0, text.length(), buffer, 0);
+        for (int i = 0; i < text.length(); i++) {
+            if (buffer[i] == '.') buffer[i] = decimalSeparator;
+            else if (buffer[i] == '-' && i == 0) buffer[i] = minusSign;
+        }
+        length = text.length();
+    }
+
+    // Writes the digits of |unscaled| to 'digits' and returns how many there are.
+    private int unscaledDigits(BigInteger unscaled) {
+        if (unscaled.bitLength() < 63) {
+            // Right to left into the end of the 32 chars, then moved to the front.
+            long v = Math.abs(unscaled.longValue());
+            int start = 32;
+            do {
+                digits[--start] = (char) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            System.arraycopy(digits, start, digits, 0, 32 - start);
+            return 32 - start;
+        }
+        String text = unscaled.abs().toString();
+        if (text.length() > digits.length) digits = new char[Math.max(text.length(), digits.length * 2)];
+        text.getChars(0, text.length(), digits, 0);
+        return text.length();
+    }
+
+    private void copyTo(Appendable out) throws IOException {
+        if (out instanceof StringBuilder sb) sb.append(buffer, 0, length);
+        else if (out instanceof Writer writer) writer.write(buffer, 0, length);
+        else out.append(CharBuffer.wrap(buffer, 0, length));
+    }
+}
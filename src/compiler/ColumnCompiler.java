@@ -0,0 +1,555 @@
+package compiler;
+
+import Exceptions.EvaluatorException;
+import compiler.DoubleCompiler.CompiledDouble;
+import evaluator.EvaluationContext;
+import evaluator.Evaluator;
+import identifier.Functions;
+import identifier.NativeFunctions.NativeFunction;
+import identifier.Slots;
+import lexer.Token.OperatorToken;
+import lexer.Token.SuffixToken;
+import math.Combinatorics;
+import parser.Node.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Evaluates a double expression over whole input columns, one block of rows at a time. Every node becomes a
+// kernel, a loop over the block in SIMD instructions for +, -, *, /, negation and a*b+c, which is fused into one
+// rounding as the DoubleCompiler fuses it. %, ^, !, natives and calls that can't be inlined have no vector form;
+// their kernels run the DoubleCompiler's per-row code instead, so results are identical to evaluating row by row.
+// Subtrees that don't depend on an input are computed once per block as scalars rather than as columns.
+//
+// When the JVM runs with --add-modules jdk.incubator.vector, as the build's tests and benchmarks do, the vector
+// kernels are VectorKernels. Otherwise, or with -Dcalc.vector=false, they are the plain counted loops below, which
+// C2's auto-vectorizer (SuperWord) compiles to much the same instructions when it recognizes them.
+// KernelBenchmarks in the jmh project measures both on cache-resident columns, and the loops once more in a fork
+// with -XX:-UseSuperWord to show what vectorization gains.
+public class ColumnCompiler {
+    @FunctionalInterface
+    public interface CompiledColumns {
+        // Rows [from, to) of 'columns', given in the order of the inputs passed to compile, into the same rows of 'result'.
+        void evaluate(double[][] columns, double[] result, int from, int to, EvaluationContext context);
+    }
+
+    // Checked once: VectorKernels can't even be loaded without the module.
+    private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && Boolean.parseBoolean(System.getProperty("calc.vector", "true"));
+    private static final int BLOCK = 1024;
+    private static final int MAX_INLINE_DEPTH = 16;
+    // Compilation recurses once per tree level; deeper trees evaluate row by row with the DoubleCompiler.
+    private static final int MAX_NESTING = 256;
+
+    @FunctionalInterface
+    private interface Scalar {
+        double value(EvaluationContext context);
+    }
+
+    @FunctionalInterface
+    private interface Kernel {
+        void run(Block block);
+    }
+
+    // Where a node's values live for the current block: one value for every row, an input column or a register.
+    private record Operand(Scalar scalar, int column, int register) {
+        static Operand scalar(Scalar scalar) {
+            return new Operand(scalar, -1, -1);
+        }
+
+        static Operand column(int column) {
+            return new Operand(null, column, -1);
+        }
+
+        static Operand register(int register) {
+            return new Operand(null, -1, register);
+        }
+
+        boolean isScalar() {
+            return scalar != null;
+        }
+
+        boolean isRegister() {
+            return register >= 0;
+        }
+    }
+
+    private static final class Block {
+        private final double[][] columns;
+        // This block's rows of each input the expression reads. Every kernel then indexes all its arrays from 0:
+        // C2 won't vectorize a loop over two arrays that may be the same one when they're read at different offsets.
+        private final double[][] inputs;
+        private final double[][] registers;
+        private final EvaluationContext context;
+        private int length;
+
+        private Block(double[][] columns, boolean[] used, int registers, int size, EvaluationContext context) {
+            this.columns = columns;
+            this.inputs = new double[columns.length][];
+            for (int i = 0; i < columns.length; i++) {
+                if (used[i]) inputs[i] = new double[size];
+            }
+            this.registers = new double[registers][size];
+            this.context = context;
+        }
+
+        void load(int start, int length) {
+            this.length = length;
+            for (int i = 0; i < inputs.length; i++) {
+                if (inputs[i] != null) System.arraycopy(columns[i], start, inputs[i], 0, length);
+            }
+        }
+
+        double[] array(Operand operand) {
+            return operand.column() >= 0 ? inputs[operand.column()] : registers[operand.register()];
+        }
+    }
+
+    private static final class TooDeep extends RuntimeException {
+        private TooDeep() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final EvaluationContext context;
+    private final List<Kernel> kernels = new ArrayList<>();
+    private final boolean[] used;
+    private int registers;
+    private int level;
+
+    private ColumnCompiler(EvaluationContext context, int inputs) {
+        this.context = context;
+        this.used = new boolean[inputs];
+    }
+
+    // 'context' supplies the function definitions that get inlined, as for the other compilers.
+    public static CompiledColumns compile(NodeType node, List<String> inputs, EvaluationContext context) {
+        ColumnCompiler compiler = new ColumnCompiler(context, inputs.size());
+        List<Operand> columns = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); i++) columns.add(Operand.column(i));
+
+        final Operand result;
+        try {
+            result = compiler.compileNode(node, inputs, columns, 0, 0);
+        } catch (TooDeep e) {
+            final CompiledDouble compiled = DoubleCompiler.compile(node, inputs, context);
+            return (input, output, from, to, ctx) -> {
+                double[] frame = new double[input.length];
+                for (int row = from; row < to; row++) {
+                    for (int i = 0; i < input.length; i++) frame[i] = input[i][row];
+                    output[row] = compiled.evaluate(frame, ctx);
+                }
+            };
+        }
+
+        final Kernel[] program = compiler.kernels.toArray(new Kernel[0]);
+        final boolean[] used = compiler.used;
+        final int registerCount = compiler.registers;
+        return (input, output, from, to, ctx) -> {
+            Block block = new Block(input, used, registerCount, Math.min(BLOCK, Math.max(to - from, 0)), ctx);
+            for (int start = from; start < to; start += BLOCK) {
+                block.load(start, Math.min(BLOCK, to - start));
+                for (Kernel kernel : program) kernel.run(block);
+                if (result.isScalar()) {
+                    Arrays.fill(output, start, start + block.length, result.scalar().value(ctx));
+                } else {
+                    System.arraycopy(block.array(result), 0, output, start, block.length);
+                }
+            }
+        };
+    }
+
+    // Results that need a register are left in register 'register'; everything from there up is free to use.
+    private Operand compileNode(NodeType node, List<String> names, List<Operand> env, int depth, int register) {
+        if (++level > MAX_NESTING) throw new TooDeep();
+        try {
+            return compileTree(node, names, env, depth, register);
+        } finally {
+            level--;
+        }
+    }
+
+    private Operand compileTree(NodeType node, List<String> names, List<Operand> env, int depth, int register) {
+        return switch (node) {
+            case NumberNode n -> {
+                final double value = n.value().doubleValue();
+                yield Operand.scalar(ctx -> value);
+            }
+            // Names the Resolver hasn't seen get their slots here, as in the Compiler.
+            case VariableNode v -> compileGlobal(v.variable().identifier(), Slots.variable(v.variable().identifier()), names, env);
+            case LocalNode l -> read(env.get(l.slot()));
+            case GlobalNode g -> compileGlobal(g.variable().identifier(), g.slot(), names, env);
+            case BinaryOperationNode b -> compileBinary(b, names, env, depth, register);
+            case PrefixOperationNode p -> {
+                Operand value = compileNode(p.value(), names, env, depth, register);
+                yield switch (p.prefix()) {
+                    case PLUS -> value;
+                    case MINUS -> {
+                        if (value.isScalar()) {
+                            final Scalar scalar = value.scalar();
+                            yield Operand.scalar(ctx -> -scalar.value(ctx));
+                        }
+                        final Operand target = into(value, register);
+                        kernels.add(block -> negate(block.registers[register], block.length));
+                        yield target;
+                    }
+                };
+            }
+            case SuffixOperationNode s -> {
+                Operand value = compileNode(s.value(), names, env, depth, register);
+                final SuffixToken suffix = s.suffix();
+                if (value.isScalar()) {
+                    final Scalar scalar = value.scalar();
+                    yield Operand.scalar(ctx -> suffix(suffix, scalar.value(ctx)));
+                }
+                final Operand target = into(value, register);
+                kernels.add(block -> suffix(suffix, block.registers[register], block.length));
+                yield target;
+            }
+            case FunctionNode f -> compileFunction(f.function().identifier(), Slots.function(f.function().identifier()), f.args(), names, env,
+                    depth, register);
+            case CallNode c -> compileFunction(c.function().identifier(), c.slot(), c.args(), names, env, depth, register);
+            case NativeFunctionNode n -> compileNative(n, names, env, depth, register);
+        };
+    }
+
+    private Operand compileGlobal(String name, int slot, List<String> names, List<Operand> env) {
+        int input = names.indexOf(name);
+        return input >= 0 ? read(env.get(input)) : Operand.scalar(ctx -> ctx.getVariable(slot, name).doubleValue());
+    }
+
+    private Operand compileBinary(BinaryOperationNode b, List<String> names, List<Operand> env, int depth, int register) {
+        final OperatorToken operator = b.operator();
+        BinaryOperationNode product = DoubleCompiler.product(b);
+        if (product != null) return compileFused(b, product, names, env, depth, register);
+        Operand left = compileNode(b.left(), names, env, depth, register);
+
+        // A scalar left side leaves 'register' free, so the right side is computed in place and combined in reverse.
+        if (left.isScalar()) {
+            Operand right = compileNode(b.right(), names, env, depth, register);
+            final Scalar leftScalar = left.scalar();
+            if (right.isScalar()) {
+                final Scalar rightScalar = right.scalar();
+                return Operand.scalar(ctx -> binary(operator, leftScalar.value(ctx), rightScalar.value(ctx)));
+            }
+            final Operand target = into(right, register);
+            kernels.add(block -> reversed(operator, leftScalar.value(block.context), block.registers[register], block.length));
+            return target;
+        }
+
+        final Operand right = compileNode(b.right(), names, env, depth, register + 1);
+        final Operand target = into(left, register);
+        if (right.isScalar()) {
+            final Scalar rightScalar = right.scalar();
+            kernels.add(block -> apply(operator, block.registers[register], rightScalar.value(block.context), block.length));
+        } else {
+            kernels.add(block -> apply(operator, block.registers[register], block.array(right), block.length));
+        }
+        return target;
+    }
+
+    // a*b + c, c + a*b, a*b - c and c - a*b as one kernel computing fma(±a, b, ±c), the same fused operation as the
+    // DoubleCompiler's. Negation is exact, so it can go on the operands.
+    private Operand compileFused(BinaryOperationNode sum, BinaryOperationNode product, List<String> names, List<Operand> env,
+                                 int depth, int register) {
+        boolean productFirst = sum.left() == product;
+        boolean negateProduct = !productFirst && sum.operator() == OperatorToken.SUB;
+        boolean negateAddend = productFirst && sum.operator() == OperatorToken.SUB;
+        NodeType addendNode = productFirst ? sum.right() : sum.left();
+
+        Operand a = compileNode(product.left(), names, env, depth, register);
+        Operand b = compileNode(product.right(), names, env, depth, register + 1);
+        Operand c = compileNode(addendNode, names, env, depth, register + 2);
+
+        if (a.isScalar() && b.isScalar() && c.isScalar()) {
+            final Scalar x = a.scalar(), y = b.scalar(), z = c.scalar();
+            final double productSign = negateProduct ? -1 : 1, addendSign = negateAddend ? -1 : 1;
+            return Operand.scalar(ctx -> Math.fma(productSign * x.value(ctx), y.value(ctx), addendSign * z.value(ctx)));
+        }
+
+        final Operand target = into(a, register);
+        if (negateProduct) kernels.add(block -> negate(block.registers[register], block.length));
+        if (negateAddend) {
+            if (c.isScalar()) {
+                final Scalar addend = c.scalar();
+                c = Operand.scalar(ctx -> -addend.value(ctx));
+            } else {
+                c = into(c, register + 2);
+                kernels.add(block -> negate(block.registers[register + 2], block.length));
+            }
+        }
+
+        final Operand factor = b, addend = c;
+        if (factor.isScalar() && addend.isScalar()) {
+            kernels.add(block -> fma(block.registers[register], factor.scalar().value(block.context),
+                    addend.scalar().value(block.context), block.length));
+        } else if (factor.isScalar()) {
+            kernels.add(block -> fma(block.registers[register], factor.scalar().value(block.context), block.array(addend), block.length));
+        } else if (addend.isScalar()) {
+            kernels.add(block -> fma(block.registers[register], block.array(factor), addend.scalar().value(block.context), block.length));
+        } else {
+            kernels.add(block -> fma(block.registers[register], block.array(factor), block.array(addend), block.length));
+        }
+        return target;
+    }
+
+    // 'slot' is the function's Slots index.
+    private Operand compileFunction(String name, int slot, List<NodeType> argNodes, List<String> names, List<Operand> env,
+                                    int depth, int register) {
+        final int argsSize = argNodes.size();
+        final Operand[] args = new Operand[argsSize];
+        for (int i = 0; i < argsSize; i++) {
+            args[i] = compileNode(argNodes.get(i), names, env, depth, register + i);
+        }
+
+        // Inlined like the DoubleCompiler: the body reads the argument operands in place of its parameters.
+        Functions.Function func = context.findFunction(slot);
+        if (func != null && func.params().size() == argsSize && depth < MAX_INLINE_DEPTH) {
+            Operand body = compileNode(func.body(), func.params(), List.of(args), depth + 1, register + argsSize);
+            return body.isScalar() || body.column() >= 0 ? body : into(body, register);
+        }
+
+        // Otherwise called row by row in BigDecimal and converted back, as the DoubleCompiler does.
+        return perRow(args, register, (values, ctx) -> {
+            BigDecimal[] decimals = new BigDecimal[values.length];
+            for (int i = 0; i < values.length; i++) decimals[i] = BigDecimal.valueOf(values[i]);
+            ctx.startBudget();
+            return Evaluator.call(slot, name, decimals, ctx).doubleValue();
+        });
+    }
+
+    private Operand compileNative(NativeFunctionNode n, List<String> names, List<Operand> env, int depth, int register) {
+        final NativeFunction target = n.target();
+        final int argsSize = n.args().size();
+        final Operand[] args = new Operand[argsSize];
+        boolean scalar = true;
+        for (int i = 0; i < argsSize; i++) {
+            args[i] = compileNode(n.args().get(i), names, env, depth, register + i);
+            scalar &= args[i].isScalar();
+        }
+
+        if (scalar) {
+            return Operand.scalar(ctx -> {
+                double[] values = new double[argsSize];
+                for (int i = 0; i < argsSize; i++) values[i] = args[i].scalar().value(ctx);
+                return target.apply(values);
+            });
+        }
+        return perRow(args, register, (values, ctx) -> target.apply(values));
+    }
+
+    @FunctionalInterface
+    private interface RowFunction {
+        double apply(double[] args, EvaluationContext context);
+    }
+
+    // A kernel that gathers the arguments of each row and calls 'function' once per row, with one array of
+    // arguments reused for every row. Every argument of a row is read before its result is written, so arguments
+    // may share 'register'.
+    private Operand perRow(Operand[] args, int register, RowFunction function) {
+        kernels.add(block -> {
+            double[] result = block.registers[register];
+            double[][] arrays = new double[args.length][];
+            double[] scalars = new double[args.length];
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].isScalar()) {
+                    scalars[i] = args[i].scalar().value(block.context);
+                } else {
+                    arrays[i] = block.array(args[i]);
+                }
+            }
+            double[] values = new double[args.length];
+            for (int row = 0; row < block.length; row++) {
+                for (int i = 0; i < args.length; i++) {
+                    values[i] = arrays[i] == null ? scalars[i] : arrays[i][row];
+                }
+                result[row] = function.apply(values, block.context);
+            }
+        });
+        return use(register);
+    }
+
+    // Copies 'operand' into 'register' unless it's already there.
+    private Operand into(Operand operand, int register) {
+        if (operand.isRegister() && operand.register() == register) return operand;
+        if (operand.isScalar()) {
+            final Scalar scalar = operand.scalar();
+            kernels.add(block -> Arrays.fill(block.registers[register], 0, block.length, scalar.value(block.context)));
+        } else {
+            kernels.add(block -> System.arraycopy(block.array(operand), 0, block.registers[register], 0, block.length));
+        }
+        return use(register);
+    }
+
+    // Marks an input as read, so each block copies its rows.
+    private Operand read(Operand operand) {
+        if (operand.column() >= 0) used[operand.column()] = true;
+        return operand;
+    }
+
+    private Operand use(int register) {
+        registers = Math.max(registers, register + 1);
+        return Operand.register(register);
+    }
+
+    // The kernels. Each loop is kept free of calls and branches wherever the operator allows, so it vectorizes;
+    // the switch runs once per block. Divisors are checked before either kind of kernel runs.
+
+    private static void apply(OperatorToken operator, double[] r, double[] b, int n) {
+        if (operator == OperatorToken.DIV || operator == OperatorToken.MOD) checkDivisors(b, n);
+        if (VECTOR && VectorKernels.apply(operator, r, b, n)) return;
+        switch (operator) {
+            case ADD -> {
+                for (int i = 0; i < n; i++) r[i] += b[i];
+            }
+            case SUB -> {
+                for (int i = 0; i < n; i++) r[i] -= b[i];
+            }
+            case MUL -> {
+                for (int i = 0; i < n; i++) r[i] *= b[i];
+            }
+            case DIV -> {
+                for (int i = 0; i < n; i++) r[i] /= b[i];
+            }
+            case MOD -> {
+                for (int i = 0; i < n; i++) r[i] %= b[i];
+            }
+            case POW -> {
+                for (int i = 0; i < n; i++) r[i] = Math.pow(r[i], b[i]);
+            }
+        }
+    }
+
+    private static void apply(OperatorToken operator, double[] r, double c, int n) {
+        if ((operator == OperatorToken.DIV || operator == OperatorToken.MOD) && n > 0 && c == 0) {
+            throw new EvaluatorException("Division by zero.");
+        }
+        if (VECTOR && VectorKernels.apply(operator, r, c, n)) return;
+        switch (operator) {
+            case ADD -> {
+                for (int i = 0; i < n; i++) r[i] += c;
+            }
+            case SUB -> {
+                for (int i = 0; i < n; i++) r[i] -= c;
+            }
+            case MUL -> {
+                for (int i = 0; i < n; i++) r[i] *= c;
+            }
+            case DIV -> {
+                for (int i = 0; i < n; i++) r[i] /= c;
+            }
+            case MOD -> {
+                for (int i = 0; i < n; i++) r[i] %= c;
+            }
+            case POW -> {
+                for (int i = 0; i < n; i++) r[i] = Math.pow(r[i], c);
+            }
+        }
+    }
+
+    // r[i] = c op r[i]
+    private static void reversed(OperatorToken operator, double c, double[] r, int n) {
+        if (operator == OperatorToken.DIV || operator == OperatorToken.MOD) checkDivisors(r, n);
+        if (VECTOR && VectorKernels.reversed(operator, c, r, n)) return;
+        switch (operator) {
+            case ADD -> {
+                for (int i = 0; i < n; i++) r[i] = c + r[i];
+            }
+            case SUB -> {
+                for (int i = 0; i < n; i++) r[i] = c - r[i];
+            }
+            case MUL -> {
+                for (int i = 0; i < n; i++) r[i] = c * r[i];
+            }
+            case DIV -> {
+                for (int i = 0; i < n; i++) r[i] = c / r[i];
+            }
+            case MOD -> {
+                for (int i = 0; i < n; i++) r[i] = c % r[i];
+            }
+            case POW -> {
+                for (int i = 0; i < n; i++) r[i] = Math.pow(c, r[i]);
+            }
+        }
+    }
+
+    private static void negate(double[] r, int n) {
+        if (VECTOR) {
+            VectorKernels.negate(r, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = -r[i];
+    }
+
+    // r[i] = fma(r[i], b, c), for each of b and c a column or one value.
+    private static void fma(double[] r, double[] b, double[] c, int n) {
+        if (VECTOR) {
+            VectorKernels.fma(r, b, c, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = Math.fma(r[i], b[i], c[i]);
+    }
+
+    private static void fma(double[] r, double[] b, double c, int n) {
+        if (VECTOR) {
+            VectorKernels.fma(r, b, c, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = Math.fma(r[i], b[i], c);
+    }
+
+    private static void fma(double[] r, double b, double[] c, int n) {
+        if (VECTOR) {
+            VectorKernels.fma(r, b, c, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = Math.fma(r[i], b, c[i]);
+    }
+
+    private static void fma(double[] r, double b, double c, int n) {
+        if (VECTOR) {
+            VectorKernels.fma(r, b, c, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = Math.fma(r[i], b, c);
+    }
+
+    private static void suffix(SuffixToken suffix, double[] r, int n) {
+        if (suffix != SuffixToken.FACTORIAL) {
+            apply(OperatorToken.MUL, r, suffix(suffix, 1), n);
+            return;
+        }
+        for (int i = 0; i < n; i++) r[i] = Combinatorics.factorial(r[i]);
+    }
+
+    private static double suffix(SuffixToken suffix, double value) {
+        return switch (suffix) {
+            case THOUSAND -> value * 1e3;
+            case MILLION -> value * 1e6;
+            case BILLION -> value * 1e9;
+            case TRILLION -> value * 1e12;
+            case FACTORIAL -> Combinatorics.factorial(value);
+        };
+    }
+
+    private static double binary(OperatorToken operator, double left, double right) {
+        double[] r = {left};
+        apply(operator, r, right, 1);
+        return r[0];
+    }
+
+    // A min reduction vectorizes where counting the zeros doesn't. NaN sticks in the minimum and would hide a
+    // zero after it, so a NaN divisor falls back to looking at each value.
+    private static void checkDivisors(double[] b, int n) {
+        double smallest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) smallest = Math.min(smallest, Math.abs(b[i]));
+        if (Double.isNaN(smallest)) {
+            for (int i = 0; i < n; i++) {
+                if (b[i] == 0) throw new EvaluatorException("Division by zero.");
+            }
+        }
+        if (smallest == 0) throw new EvaluatorException("Division by zero.");
+    }
+}
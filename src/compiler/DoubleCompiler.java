@@ -0,0 +1,266 @@
+package compiler;
+
+import Exceptions.EvaluatorException;
+import evaluator.Evaluator;
+import identifier.Functions;
+import identifier.NativeFunctions.NativeFunction;
+import identifier.Slots;
+import evaluator.EvaluationContext;
+import lexer.Token.*;
+import math.Combinatorics;
+import parser.Node.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import static resolver.Resolver.resolve;
+
+// Compiles a tree into closures over doubles, with user functions inlined like the Compiler's. Arguments of inlined
+// calls and natives go into frames the EvaluationContext keeps per call level, and natives of one or two arguments
+// are called with the values directly, so evaluation allocates nothing unless a call falls back to BigDecimal.
+// DoubleBenchmarks in the jmh project compares it with BigDecimal evaluation.
+public class DoubleCompiler {
+    @FunctionalInterface
+    public interface CompiledDouble {
+        double evaluate(double[] frame, EvaluationContext context);
+    }
+
+    private static final int MAX_INLINE_DEPTH = 16;
+    // Closures call each other once per tree level when they run, so deeper trees go to the tree-walker instead.
+    private static final int MAX_NESTING = 256;
+    private static final double[] EMPTY_FRAME = new double[0];
+
+    private final List<String> slots;
+    private final EvaluationContext context;
+    private final int depth;
+    private int level;
+    // Level of the next call compiled: calls in another call's arguments or body are one further in.
+    private int calls;
+
+    private DoubleCompiler(List<String> slots, EvaluationContext context, int depth, int level, int calls) {
+        this.slots = slots;
+        this.context = context;
+        this.depth = depth;
+        this.level = level;
+        this.calls = calls;
+    }
+
+    private static final class TooDeep extends RuntimeException {
+        private TooDeep() {
+            super(null, null, false, false);
+        }
+    }
+
+    public static CompiledDouble compile(NodeType node, EvaluationContext context) {
+        return compile(node, List.of(), context);
+    }
+
+    public static CompiledDouble compile(NodeType node, List<String> slots, EvaluationContext context) {
+        try {
+            return new DoubleCompiler(slots, context, 0, 0, 0).compileNode(node);
+        } catch (TooDeep e) {
+            // Evaluated in BigDecimal and converted back, like calls the compiler can't inline.
+            final NodeType tree = resolve(node, slots);
+            return (frame, ctx) -> {
+                BigDecimal[] values = new BigDecimal[frame.length];
+                for (int i = 0; i < frame.length; i++) values[i] = BigDecimal.valueOf(frame[i]);
+                return Evaluator.evaluate(tree, values, ctx).doubleValue();
+            };
+        }
+    }
+
+    public static double[] emptyFrame() {
+        return EMPTY_FRAME;
+    }
+
+    private CompiledDouble compileNode(NodeType node) {
+        if (++level > MAX_NESTING) throw new TooDeep();
+        try {
+            return compileTree(node);
+        } finally {
+            level--;
+        }
+    }
+
+    private CompiledDouble compileTree(NodeType node) {
+        return switch (node) {
+            case NumberNode n -> {
+                final double value = n.value().doubleValue();
+                yield (frame, ctx) -> value;
+            }
+            case BinaryOperationNode b when product(b) != null -> compileFused(b, product(b));
+            case BinaryOperationNode b -> {
+                final CompiledDouble left = compileNode(b.left());
+                final CompiledDouble right = compileNode(b.right());
+                yield switch (b.operator()) {
+                    case ADD -> (frame, ctx) -> left.evaluate(frame, ctx) + right.evaluate(frame, ctx);
+                    case SUB -> (frame, ctx) -> left.evaluate(frame, ctx) - right.evaluate(frame, ctx);
+                    case MUL -> (frame, ctx) -> left.evaluate(frame, ctx) * right.evaluate(frame, ctx);
+                    case DIV -> (frame, ctx) -> divide(left.evaluate(frame, ctx), right.evaluate(frame, ctx));
+                    case MOD -> (frame, ctx) -> remainder(left.evaluate(frame, ctx), right.evaluate(frame, ctx));
+                    case POW -> (frame, ctx) -> Math.pow(left.evaluate(frame, ctx), right.evaluate(frame, ctx));
+                };
+            }
+            case PrefixOperationNode p -> {
+                final CompiledDouble value = compileNode(p.value());
+                yield switch (p.prefix()) {
+                    case PLUS -> value;
+                    case MINUS -> (frame, ctx) -> -value.evaluate(frame, ctx);
+                };
+            }
+            case SuffixOperationNode s -> {
+                final CompiledDouble value = compileNode(s.value());
+                yield switch (s.suffix()) {
+                    case THOUSAND -> (frame, ctx) -> value.evaluate(frame, ctx) * 1e3;
+                    case MILLION -> (frame, ctx) -> value.evaluate(frame, ctx) * 1e6;
+                    case BILLION -> (frame, ctx) -> value.evaluate(frame, ctx) * 1e9;
+                    case TRILLION -> (frame, ctx) -> value.evaluate(frame, ctx) * 1e12;
+                    case FACTORIAL -> (frame, ctx) -> Combinatorics.factorial(value.evaluate(frame, ctx));
+                };
+            }
+            // Names the Resolver hasn't seen get their slots here, as in the Compiler.
+            case VariableNode v -> compileGlobal(v.variable().identifier(), Slots.variable(v.variable().identifier()));
+            case LocalNode l -> {
+                final int slot = l.slot();
+                yield (frame, ctx) -> frame[slot];
+            }
+            case GlobalNode g -> compileGlobal(g.variable().identifier(), g.slot());
+            case FunctionNode f -> compileFunction(f.function().identifier(), Slots.function(f.function().identifier()), f.args());
+            case CallNode c -> compileFunction(c.function().identifier(), c.slot(), c.args());
+            case NativeFunctionNode n -> compileNative(n);
+        };
+    }
+
+    // The product in a sum or difference with one, preferring the left side, or null. a*b + c and the like are
+    // computed as Math.fma, rounded once instead of twice, here and in the ColumnCompiler's kernels alike.
+    static BinaryOperationNode product(BinaryOperationNode b) {
+        if (b.operator() != OperatorToken.ADD && b.operator() != OperatorToken.SUB) return null;
+        if (b.left() instanceof BinaryOperationNode l && l.operator() == OperatorToken.MUL) return l;
+        if (b.right() instanceof BinaryOperationNode r && r.operator() == OperatorToken.MUL) return r;
+        return null;
+    }
+
+    // Operands are evaluated left to right as written; negation is exact, so a difference negates one of them.
+    private CompiledDouble compileFused(BinaryOperationNode sum, BinaryOperationNode product) {
+        final boolean subtract = sum.operator() == OperatorToken.SUB;
+        if (sum.left() == product) {
+            final CompiledDouble a = compileNode(product.left()), b = compileNode(product.right()), c = compileNode(sum.right());
+            if (subtract) return (frame, ctx) -> Math.fma(a.evaluate(frame, ctx), b.evaluate(frame, ctx), -c.evaluate(frame, ctx));
+            return (frame, ctx) -> Math.fma(a.evaluate(frame, ctx), b.evaluate(frame, ctx), c.evaluate(frame, ctx));
+        }
+        final CompiledDouble c = compileNode(sum.left()), a = compileNode(product.left()), b = compileNode(product.right());
+        if (subtract) {
+            return (frame, ctx) -> {
+                double addend = c.evaluate(frame, ctx);
+                return Math.fma(-a.evaluate(frame, ctx), b.evaluate(frame, ctx), addend);
+            };
+        }
+        return (frame, ctx) -> {
+            double addend = c.evaluate(frame, ctx);
+            return Math.fma(a.evaluate(frame, ctx), b.evaluate(frame, ctx), addend);
+        };
+    }
+
+    private CompiledDouble compileGlobal(String name, int slot) {
+        final int input = slots.indexOf(name);
+        if (input >= 0) return (frame, ctx) -> frame[input];
+
+        return (frame, ctx) -> ctx.getVariable(slot, name).doubleValue();
+    }
+
+    // 'slot' is the function's Slots index.
+    private CompiledDouble compileFunction(String name, int slot, List<NodeType> argNodes) {
+        final int frameLevel = calls++;
+        try {
+            return compileCall(name, slot, argNodes, frameLevel);
+        } finally {
+            calls--;
+        }
+    }
+
+    private CompiledDouble compileCall(String name, int slot, List<NodeType> argNodes, int frameLevel) {
+        final int argsSize = argNodes.size();
+        final CompiledDouble[] args = new CompiledDouble[argsSize];
+        for (int i = 0; i < argsSize; i++) {
+            args[i] = compileNode(argNodes.get(i));
+        }
+
+        Functions.Function func = context.findFunction(slot);
+        if (func == null || func.params().size() != argsSize || depth >= MAX_INLINE_DEPTH) {
+            return (frame, ctx) -> {
+                BigDecimal[] values = new BigDecimal[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    values[i] = BigDecimal.valueOf(args[i].evaluate(frame, ctx));
+                }
+                return Evaluator.call(slot, name, values, ctx).doubleValue();
+            };
+        }
+
+        final CompiledDouble body = new DoubleCompiler(func.params(), context, depth + 1, level, calls).compileNode(func.body());
+        return switch (argsSize) {
+            case 0 -> (frame, ctx) -> body.evaluate(EMPTY_FRAME, ctx);
+            case 1 -> {
+                final CompiledDouble arg = args[0];
+                yield (frame, ctx) -> {
+                    double value = arg.evaluate(frame, ctx);
+                    double[] values = ctx.doubleFrame(frameLevel, 1);
+                    values[0] = value;
+                    return body.evaluate(values, ctx);
+                };
+            }
+            default -> (frame, ctx) -> {
+                double[] values = ctx.doubleFrame(frameLevel, args.length);
+                for (int i = 0; i < args.length; i++) {
+                    values[i] = args[i].evaluate(frame, ctx);
+                }
+                return body.evaluate(values, ctx);
+            };
+        };
+    }
+
+    private CompiledDouble compileNative(NativeFunctionNode n) {
+        final int frameLevel = calls++;
+        try {
+            final NativeFunction target = n.target();
+            final int argsSize = n.args().size();
+            final CompiledDouble[] args = new CompiledDouble[argsSize];
+            for (int i = 0; i < argsSize; i++) {
+                args[i] = compileNode(n.args().get(i));
+            }
+            if (argsSize == 1 && target.unary() != null) {
+                final DoubleUnaryOperator unary = target.unary();
+                final CompiledDouble arg = args[0];
+                return (frame, ctx) -> unary.applyAsDouble(arg.evaluate(frame, ctx));
+            }
+            if (argsSize == 2 && target.binary() != null) {
+                final DoubleBinaryOperator binary = target.binary();
+                final CompiledDouble left = args[0], right = args[1];
+                return (frame, ctx) -> {
+                    double l = left.evaluate(frame, ctx);
+                    return binary.applyAsDouble(l, right.evaluate(frame, ctx));
+                };
+            }
+            return (frame, ctx) -> {
+                double[] values = ctx.doubleFrame(frameLevel, args.length);
+                for (int i = 0; i < args.length; i++) {
+                    values[i] = args[i].evaluate(frame, ctx);
+                }
+                return target.apply(values, args.length);
+            };
+        } finally {
+            calls--;
+        }
+    }
+
+    private static double divide(double left, double right) {
+        if (right == 0) throw new EvaluatorException("Division by zero.");
+        return left / right;
+    }
+
+    private static double remainder(double left, double right) {
+        if (right == 0) throw new EvaluatorException("Division by zero.");
+        return left % right;
+    }
+}
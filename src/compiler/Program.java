@@ -0,0 +1,259 @@
+package compiler;
+
+import Exceptions.EvaluatorException;
+import evaluator.EvaluationContext;
+import evaluator.Evaluator;
+import identifier.NativeFunctions.NativeFunction;
+import lexer.Token.OperatorToken;
+import lexer.Token.SuffixToken;
+import math.Combinatorics;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+// A flat stack-machine program built by StackCompiler: opcodes and their operands inline in one int[],
+// literals in a constant pool. Evaluation is a single loop over 'code'; both operand stacks are reused between
+// evaluations, so neither allocates anything for the stack itself, only argument arrays of calls (and, for
+// BigDecimal, the results of the arithmetic).
+public final class Program {
+    static final int CONST = 0;     // CONST index          push constants[index]
+    static final int LOCAL = 1;     // LOCAL slot           push frame[slot]
+    static final int GLOBAL = 2;    // GLOBAL slot name     push the variable in Slots.variable slot
+    static final int ADD = 3;
+    static final int SUB = 4;
+    static final int MUL = 5;
+    static final int DIV = 6;
+    static final int MOD = 7;
+    static final int POW = 8;
+    static final int NEG = 9;
+    static final int SUFFIX = 10;   // SUFFIX ordinal
+    static final int CALL = 11;     // CALL slot name argc  user function in Slots.function slot
+    static final int NATIVE = 12;   // NATIVE index argc    natives[index]
+
+    private static final SuffixToken[] SUFFIXES = SuffixToken.values();
+
+    private static final ThreadLocal<Stack> STACKS = ThreadLocal.withInitial(Stack::new);
+
+    private final int[] code;
+    private final BigDecimal[] constants;
+    private final double[] doubleConstants;
+    private final String[] names;
+    private final NativeFunction[] natives;
+    private final int maxStack;
+
+    Program(int[] code, BigDecimal[] constants, String[] names, NativeFunction[] natives, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.doubleConstants = new double[constants.length];
+        for (int i = 0; i < constants.length; i++) doubleConstants[i] = constants[i].doubleValue();
+        this.names = names;
+        this.natives = natives;
+        this.maxStack = maxStack;
+    }
+
+    // A double operand stack, grown on demand and kept for the next evaluation. Each evaluation works above
+    // 'top', so one that re-enters a program with the same stack can't clobber the caller's operands.
+    // A Stack belongs to one thread at a time.
+    public static final class Stack {
+        private double[] values = new double[64];
+        private int top;
+    }
+
+    // The BigDecimal stack is the context's operand space, reused between evaluations rather than allocated for
+    // each one.
+    public BigDecimal evaluate(BigDecimal[] frame, EvaluationContext context) {
+        final int base = context.reserveOperands(maxStack);
+        final BigDecimal[] s = context.getOperands();
+        final int[] code = this.code;
+        int sp = base;
+        int pc = 0;
+        try {
+            while (pc < code.length) {
+                switch (code[pc++]) {
+                    case CONST -> s[sp++] = constants[code[pc++]].round(context.getMathContext());
+                    case LOCAL -> s[sp++] = frame[code[pc++]];
+                    case GLOBAL -> {
+                        s[sp++] = context.getVariable(code[pc], names[code[pc + 1]]);
+                        pc += 2;
+                    }
+                    case ADD -> {
+                        sp--;
+                        context.charge(OperatorToken.ADD, s[sp - 1], s[sp]);
+                        s[sp - 1] = s[sp - 1].add(s[sp], context.getMathContext());
+                    }
+                    case SUB -> {
+                        sp--;
+                        context.charge(OperatorToken.SUB, s[sp - 1], s[sp]);
+                        s[sp - 1] = s[sp - 1].subtract(s[sp], context.getMathContext());
+                    }
+                    case MUL -> {
+                        sp--;
+                        context.charge(OperatorToken.MUL, s[sp - 1], s[sp]);
+                        s[sp - 1] = s[sp - 1].multiply(s[sp], context.getMathContext());
+                    }
+                    case DIV, MOD, POW -> {
+                        sp--;
+                        s[sp - 1] = Evaluator.binary(StackCompiler.operator(code[pc - 1]), s[sp - 1], s[sp], context);
+                    }
+                    case NEG -> s[sp - 1] = s[sp - 1].negate();
+                    case SUFFIX -> s[sp - 1] = Evaluator.suffix(SUFFIXES[code[pc++]], s[sp - 1], context);
+                    case CALL -> {
+                        int argc = code[pc + 2];
+                        sp -= argc;
+                        BigDecimal[] args = Arrays.copyOfRange(s, sp, sp + argc);
+                        s[sp++] = Evaluator.call(code[pc], names[code[pc + 1]], args, context);
+                        pc += 3;
+                    }
+                    case NATIVE -> {
+                        int argc = code[pc + 1];
+                        sp -= argc;
+                        BigDecimal[] args = Arrays.copyOfRange(s, sp, sp + argc);
+                        s[sp++] = Evaluator.apply(natives[code[pc]], args, context);
+                        pc += 2;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+            return s[base];
+        } finally {
+            context.releaseOperands(base);
+        }
+    }
+
+    // Uses a stack kept per thread; callers evaluating in a loop can pass their own and skip the lookup.
+    public double evaluateDouble(double[] frame, EvaluationContext context) {
+        return evaluateDouble(frame, context, STACKS.get());
+    }
+
+    public double evaluateDouble(double[] frame, EvaluationContext context, Stack stack) {
+        final int base = stack.top;
+        if (base + maxStack > stack.values.length) {
+            stack.values = Arrays.copyOf(stack.values, Math.max(stack.values.length * 2, base + maxStack));
+        }
+        final double[] s = stack.values;
+        stack.top = base + maxStack;
+
+        final int[] code = this.code;
+        int sp = base;
+        int pc = 0;
+        try {
+            while (pc < code.length) {
+                switch (code[pc++]) {
+                    case CONST -> s[sp++] = doubleConstants[code[pc++]];
+                    case LOCAL -> s[sp++] = frame[code[pc++]];
+                    case GLOBAL -> {
+                        s[sp++] = context.getVariable(code[pc], names[code[pc + 1]]).doubleValue();
+                        pc += 2;
+                    }
+                    case ADD -> {
+                        sp--;
+                        s[sp - 1] += s[sp];
+                    }
+                    case SUB -> {
+                        sp--;
+                        s[sp - 1] -= s[sp];
+                    }
+                    case MUL -> {
+                        sp--;
+                        s[sp - 1] *= s[sp];
+                    }
+                    case DIV -> {
+                        sp--;
+                        if (s[sp] == 0) throw new EvaluatorException("Division by zero.");
+                        s[sp - 1] /= s[sp];
+                    }
+                    case MOD -> {
+                        sp--;
+                        if (s[sp] == 0) throw new EvaluatorException("Division by zero.");
+                        s[sp - 1] %= s[sp];
+                    }
+                    case POW -> {
+                        sp--;
+                        s[sp - 1] = Math.pow(s[sp - 1], s[sp]);
+                    }
+                    case NEG -> s[sp - 1] = -s[sp - 1];
+                    case SUFFIX -> s[sp - 1] = suffix(SUFFIXES[code[pc++]], s[sp - 1]);
+                    case CALL -> {
+                        // Like the DoubleCompiler's fallback: evaluated in BigDecimal and converted back.
+                        int argc = code[pc + 2];
+                        sp -= argc;
+                        BigDecimal[] args = new BigDecimal[argc];
+                        for (int i = 0; i < argc; i++) args[i] = BigDecimal.valueOf(s[sp + i]);
+                        s[sp++] = Evaluator.call(code[pc], names[code[pc + 1]], args, context).doubleValue();
+                        pc += 3;
+                    }
+                    case NATIVE -> {
+                        int argc = code[pc + 1];
+                        sp -= argc;
+                        double[] args = Arrays.copyOfRange(s, sp, sp + argc);
+                        s[sp++] = natives[code[pc]].apply(args);
+                        pc += 2;
+                    }
+                    default -> throw new IllegalStateException("Unknown opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+            return s[base];
+        } finally {
+            stack.top = base;
+        }
+    }
+
+    private static double suffix(SuffixToken suffix, double value) {
+        return switch (suffix) {
+            case THOUSAND -> value * 1e3;
+            case MILLION -> value * 1e6;
+            case BILLION -> value * 1e9;
+            case TRILLION -> value * 1e12;
+            case FACTORIAL -> Combinatorics.factorial(value);
+        };
+    }
+
+    public int length() {
+        return code.length;
+    }
+
+    public int maxStack() {
+        return maxStack;
+    }
+
+    // Estimated shallow bytes with compressed oops: this object and its arrays. The constants themselves
+    // (BigDecimal values, names and natives) are shared with the tree it was compiled from and not counted.
+    public long footprint() {
+        return 32 + array(code.length, 4) + array(constants.length, 4) + array(doubleConstants.length, 8)
+                + array(names.length, 4) + array(natives.length, 4);
+    }
+
+    private static long array(int length, int elementSize) {
+        return (16 + (long) length * elementSize + 7) & ~7L;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int pc = 0;
+        while (pc < code.length) {
+            if (pc > 0) sb.append('\n');
+            sb.append(pc).append(' ');
+            switch (code[pc++]) {
+                case CONST -> sb.append("CONST ").append(constants[code[pc++]]);
+                case LOCAL -> sb.append("LOCAL ").append(code[pc++]);
+                case GLOBAL -> {
+                    sb.append("GLOBAL ").append(names[code[pc + 1]]);
+                    pc += 2;
+                }
+                case NEG -> sb.append("NEG");
+                case SUFFIX -> sb.append("SUFFIX ").append(SUFFIXES[code[pc++]].name());
+                case CALL -> {
+                    sb.append("CALL ").append(names[code[pc + 1]]).append('/').append(code[pc + 2]);
+                    pc += 3;
+                }
+                case NATIVE -> {
+                    sb.append("NATIVE ").append(natives[code[pc]].name()).append('/').append(code[pc + 1]);
+                    pc += 2;
+                }
+                default -> sb.append(StackCompiler.operator(code[pc - 1]).name());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package compiler;
+
+import identifier.NativeFunctions.NativeFunction;
+import lexer.Token.OperatorToken;
+import parser.Node.*;
+import parser.Trees;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static resolver.Resolver.resolve;
+
+// Flattens a tree into a Program in post-order, so every operator follows its operands.
+// The tree is resolved first; user functions are called by slot rather than inlined, which keeps programs
+// valid when functions are redefined and keeps their size proportional to the expression.
+public class StackCompiler {
+    private int[] code = new int[16];
+    private int length;
+    private int depth;
+    private int maxStack;
+    private final List<BigDecimal> constants = new ArrayList<>();
+    private final Map<BigDecimal, Integer> constantIndex = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private final List<NativeFunction> natives = new ArrayList<>();
+
+    private StackCompiler() {
+    }
+
+    public static Program compile(NodeType node) {
+        return compile(node, List.of());
+    }
+
+    // Names in 'slots' are read from the frame passed to evaluate, in that order; everything else is a global.
+    public static Program compile(NodeType node, List<String> slots) {
+        StackCompiler compiler = new StackCompiler();
+        Trees.rebuild(resolve(node, slots), compiler::emit);
+        return new Program(Arrays.copyOf(compiler.code, compiler.length), compiler.constants.toArray(new BigDecimal[0]),
+                compiler.names.toArray(new String[0]), compiler.natives.toArray(new NativeFunction[0]), compiler.maxStack);
+    }
+
+    // Called once per node after all of its children, which is exactly the order the machine needs.
+    private NodeType emit(NodeType node, List<NodeType> children) {
+        switch (node) {
+            case NumberNode n -> emit(Program.CONST, 1, constant(n.value()));
+            case LocalNode l -> emit(Program.LOCAL, 1, l.slot());
+            case GlobalNode g -> emit(Program.GLOBAL, 1, g.slot(), name(g.variable().identifier()));
+            case BinaryOperationNode b -> emit(opcode(b.operator()), -1);
+            case PrefixOperationNode p -> {
+                switch (p.prefix()) {
+                    case PLUS -> {
+                    }
+                    case MINUS -> emit(Program.NEG, 0);
+                }
+            }
+            case SuffixOperationNode s -> emit(Program.SUFFIX, 0, s.suffix().ordinal());
+            case CallNode c -> emit(Program.CALL, 1 - c.args().size(), c.slot(), name(c.function().identifier()), c.args().size());
+            case NativeFunctionNode n -> {
+                natives.add(n.target());
+                emit(Program.NATIVE, 1 - n.args().size(), natives.size() - 1, n.args().size());
+            }
+            case VariableNode v -> throw new IllegalStateException("Unresolved variable: " + v);
+            case FunctionNode f -> throw new IllegalStateException("Unresolved call: " + f);
+        }
+        return node;
+    }
+
+    // 'effect' is the change in stack height.
+    private void emit(int opcode, int effect, int... operands) {
+        if (length + operands.length + 1 > code.length) code = Arrays.copyOf(code, code.length * 2 + operands.length + 1);
+        code[length++] = opcode;
+        for (int operand : operands) code[length++] = operand;
+        depth += effect;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    private int constant(BigDecimal value) {
+        return constantIndex.computeIfAbsent(value, v -> {
+            constants.add(v);
+            return constants.size() - 1;
+        });
+    }
+
+    private int name(String name) {
+        return nameIndex.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+
+    static int opcode(OperatorToken operator) {
+        return switch (operator) {
+            case ADD -> Program.ADD;
+            case SUB -> Program.SUB;
+            case MUL -> Program.MUL;
+            case DIV -> Program.DIV;
+            case MOD -> Program.MOD;
+            case POW -> Program.POW;
+        };
+    }
+
+    static OperatorToken operator(int opcode) {
+        return switch (opcode) {
+            case Program.ADD -> OperatorToken.ADD;
+            case Program.SUB -> OperatorToken.SUB;
+            case Program.MUL -> OperatorToken.MUL;
+            case Program.DIV -> OperatorToken.DIV;
+            case Program.MOD -> OperatorToken.MOD;
+            case Program.POW -> OperatorToken.POW;
+            default -> throw new IllegalStateException("Not an operator opcode: " + opcode);
+        };
+    }
+}
@@ -0,0 +1,195 @@
+package compiler;
+
+import lexer.Token.OperatorToken;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// ColumnCompiler's kernels for +, -, *, /, negation and fused multiply-add, written against jdk.incubator.vector so
+// they don't depend on C2 recognizing the loop. Each runs whole vectors of the preferred species, then the last
+// partial vector under a mask. Lane-wise IEEE operations give the same bits as the scalar loops they replace.
+// The operator methods are called with constant arguments in every loop, which the Vector API needs to compile
+// them to single instructions; an operator passed in as a value would run the API's Java fallback instead.
+// Only loaded when ColumnCompiler finds the module in the boot layer.
+final class VectorKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+
+    private VectorKernels() {
+    }
+
+    // r[i] = r[i] op b[i]; false for operators without a lane-wise form, which the caller runs itself.
+    static boolean apply(OperatorToken operator, double[] r, double[] b, int n) {
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        switch (operator) {
+            case ADD -> {
+                for (; i < bound; i += LENGTH) load(r, i).add(load(b, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).add(load(b, i, m)).intoArray(r, i, m);
+                }
+            }
+            case SUB -> {
+                for (; i < bound; i += LENGTH) load(r, i).sub(load(b, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).sub(load(b, i, m)).intoArray(r, i, m);
+                }
+            }
+            case MUL -> {
+                for (; i < bound; i += LENGTH) load(r, i).mul(load(b, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).mul(load(b, i, m)).intoArray(r, i, m);
+                }
+            }
+            case DIV -> {
+                for (; i < bound; i += LENGTH) load(r, i).div(load(b, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).div(load(b, i, m)).intoArray(r, i, m);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // r[i] = r[i] op c
+    static boolean apply(OperatorToken operator, double[] r, double c, int n) {
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        switch (operator) {
+            case ADD -> {
+                for (; i < bound; i += LENGTH) load(r, i).add(c).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).add(c).intoArray(r, i, m);
+                }
+            }
+            case SUB -> {
+                for (; i < bound; i += LENGTH) load(r, i).sub(c).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).sub(c).intoArray(r, i, m);
+                }
+            }
+            case MUL -> {
+                for (; i < bound; i += LENGTH) load(r, i).mul(c).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).mul(c).intoArray(r, i, m);
+                }
+            }
+            case DIV -> {
+                for (; i < bound; i += LENGTH) load(r, i).div(c).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    load(r, i, m).div(c).intoArray(r, i, m);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // r[i] = c op r[i]
+    static boolean reversed(OperatorToken operator, double c, double[] r, int n) {
+        DoubleVector constant = DoubleVector.broadcast(SPECIES, c);
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        switch (operator) {
+            case ADD -> {
+                return apply(OperatorToken.ADD, r, c, n);
+            }
+            case MUL -> {
+                return apply(OperatorToken.MUL, r, c, n);
+            }
+            case SUB -> {
+                for (; i < bound; i += LENGTH) constant.sub(load(r, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    constant.sub(load(r, i, m)).intoArray(r, i, m);
+                }
+            }
+            case DIV -> {
+                for (; i < bound; i += LENGTH) constant.div(load(r, i)).intoArray(r, i);
+                if (i < n) {
+                    VectorMask<Double> m = SPECIES.indexInRange(i, n);
+                    constant.div(load(r, i, m)).intoArray(r, i, m);
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void negate(double[] r, int n) {
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += LENGTH) load(r, i).neg().intoArray(r, i);
+        if (i < n) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, n);
+            load(r, i, m).neg().intoArray(r, i, m);
+        }
+    }
+
+    // r[i] = fma(r[i], b[i], c[i]), rounded once like Math.fma.
+    static void fma(double[] r, double[] b, double[] c, int n) {
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += LENGTH) load(r, i).fma(load(b, i), load(c, i)).intoArray(r, i);
+        if (i < n) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, n);
+            load(r, i, m).fma(load(b, i, m), load(c, i, m)).intoArray(r, i, m);
+        }
+    }
+
+    static void fma(double[] r, double[] b, double c, int n) {
+        DoubleVector addend = DoubleVector.broadcast(SPECIES, c);
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += LENGTH) load(r, i).fma(load(b, i), addend).intoArray(r, i);
+        if (i < n) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, n);
+            load(r, i, m).fma(load(b, i, m), addend).intoArray(r, i, m);
+        }
+    }
+
+    static void fma(double[] r, double b, double[] c, int n) {
+        DoubleVector factor = DoubleVector.broadcast(SPECIES, b);
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += LENGTH) load(r, i).fma(factor, load(c, i)).intoArray(r, i);
+        if (i < n) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, n);
+            load(r, i, m).fma(factor, load(c, i, m)).intoArray(r, i, m);
+        }
+    }
+
+    static void fma(double[] r, double b, double c, int n) {
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += LENGTH) load(r, i).fma(b, c).intoArray(r, i);
+        if (i < n) {
+            VectorMask<Double> m = SPECIES.indexInRange(i, n);
+            load(r, i, m).fma(b, c).intoArray(r, i, m);
+        }
+    }
+
+    private static DoubleVector load(double[] array, int i) {
+        return DoubleVector.fromArray(SPECIES, array, i);
+    }
+
+    private static DoubleVector load(double[] array, int i, VectorMask<Double> m) {
+        return DoubleVector.fromArray(SPECIES, array, i, m);
+    }
+}
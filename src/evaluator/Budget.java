@@ -0,0 +1,179 @@
+package evaluator;
+
+import Exceptions.BudgetExceededException;
+import identifier.NativeFunctions.NativeFunction;
+import lexer.Token.OperatorToken;
+import lexer.Token.SuffixToken;
+import math.BigMath;
+import math.Combinatorics;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.time.Duration;
+
+// Limits on the work one evaluation may do. BigDecimal operations are exact, so a short input such as 9^99999999
+// or a long chain of multiplications can otherwise run for minutes. The size of each result is estimated from its
+// operands before the operation runs, and anything over maxDigits (digits of the unscaled value), maxScale or
+// maxExponent is refused; maxOperations and timeout bound the number of operations and the wall-clock time.
+// EvaluationContext enforces the budget it is given; CalculatorSession starts from DEFAULT.
+public record Budget(int maxDigits, int maxScale, int maxExponent, long maxOperations, Duration timeout) {
+    // Tune with -Dcalc.budget.maxDigits, .maxScale, .maxExponent, .maxOperations and .timeoutMillis.
+    // maxDigits is large enough for every factorial Combinatorics accepts.
+    public static final Budget DEFAULT = new Budget(
+            Integer.getInteger("calc.budget.maxDigits", 500_000),
+            Integer.getInteger("calc.budget.maxScale", 10_000),
+            Integer.getInteger("calc.budget.maxExponent", 1_000_000),
+            Long.getLong("calc.budget.maxOperations", 10_000_000),
+            Duration.ofMillis(Long.getLong("calc.budget.timeoutMillis", 5_000)));
+
+    public static final Budget UNLIMITED = new Budget(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, null);
+
+    private static final double LOG10_2 = Math.log10(2);
+    private static final double LOG10_E = Math.log10(Math.E);
+
+    public Budget {
+        if (maxDigits <= 0 || maxScale < 0 || maxExponent < 0 || maxOperations <= 0) {
+            throw new IllegalArgumentException("Budget limits must be positive");
+        }
+        if (timeout != null && timeout.isNegative()) throw new IllegalArgumentException("Budget timeout must not be negative");
+    }
+
+    // As below, for an operation rounded to 'mc': a rounded result can't outgrow the precision, so only the exponent
+    // limit and MOD, whose integral quotient is formed exactly, are left to check.
+    public long check(OperatorToken operator, BigDecimal left, BigDecimal right, MathContext mc) {
+        if (mc.getPrecision() == 0 || operator == OperatorToken.MOD) return check(operator, left, right);
+        if (operator != OperatorToken.POW) return mc.getPrecision();
+        checkExponent(right);
+        return checkDigits(powDigits(left, right, mc.getPrecision()));
+    }
+
+    // Throws if Evaluator.binary would produce a result over the limits, and otherwise returns the estimated digits.
+    // Estimates are upper bounds within a digit or two and cost a few comparisons.
+    public long check(OperatorToken operator, BigDecimal left, BigDecimal right) {
+        return switch (operator) {
+            case ADD, SUB -> {
+                // Both operands are aligned to the larger scale first, so a large number plus a tiny fraction is long.
+                long scale = Math.max(left.scale(), right.scale());
+                checkScale(scale);
+                yield checkDigits(Math.max(integerDigits(left), integerDigits(right)) + scale + 1);
+            }
+            case MUL -> {
+                checkScale((long) left.scale() + right.scale());
+                yield checkDigits((long) left.precision() + right.precision());
+            }
+            // DIV rounds to 20 places, and MOD forms the integral quotient first; both cost its digits.
+            case DIV -> checkDigits(Math.max(0, integerDigits(left) - integerDigits(right)) + 21);
+            case MOD -> checkDigits(Math.max(0, integerDigits(left) - integerDigits(right)) + Math.max(left.scale(), right.scale()) + 1);
+            case POW -> {
+                // Non-integral and negative exponents go through BigMath at a fixed precision.
+                if (right.scale() > 0 || right.signum() < 0) yield checkDigits(powDigits(left, right, Evaluator.MATH_CONTEXT.getPrecision()));
+                checkExponent(right);
+                int exponent = right.intValue();
+                checkScale((long) left.scale() * exponent);
+                // precision * exponent overestimates by up to one digit per factor; refine it only when it matters.
+                long digits = (long) left.precision() * exponent;
+                if (digits <= maxDigits) yield digits;
+                yield checkDigits((long) Math.floor(exponent * log10(left.unscaledValue())) + 1);
+            }
+        };
+    }
+
+    // As above for Evaluator.suffix. Only n! grows; the others shift the scale.
+    public long check(SuffixToken suffix, BigDecimal value) {
+        if (suffix != SuffixToken.FACTORIAL || value.compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0) return value.precision();
+        // Invalid arguments are left to Combinatorics.
+        double n = value.doubleValue();
+        if (n < 2) return 1;
+        return checkDigits((long) Math.ceil(lnFactorial(n) * LOG10_E));
+    }
+
+    // As above for Evaluator.apply at 'mc', which is MATH_CONTEXT for an exact context. nCr and nPr are exact and
+    // grow with their arguments; past the factorial limit nCr is nPr / r!, so it costs nPr's digits too. The
+    // transcendental functions round to the precision but work at more digits the larger their argument is, and
+    // the rest are bounded by their arguments.
+    public long check(NativeFunction function, BigDecimal[] args, MathContext mc) {
+        int precision = mc.getPrecision();
+        return switch (function.name()) {
+            case "nCr", "nPr" -> check(function.name().equals("nCr"), args[0], args[1]);
+            // Range reduction needs pi to as many more digits as the argument has before the point.
+            case "sin", "cos", "tan" -> checkDigits(precision + Math.max(0, integerDigits(args[0])));
+            // exp halves its argument to 1/2 or less and carries a digit for each halving.
+            case "exp" -> checkDigits(precision + (long) Math.ceil(Math.max(0, integerDigits(args[0])) / LOG10_2));
+            // ln divides its argument by the nearest power of two exactly, which is as long as the argument is large.
+            case "ln", "log10" -> checkDigits(precision + Math.abs(integerDigits(args[0])));
+            case "pow" -> checkDigits(powDigits(args[0], args[1], precision));
+            default -> {
+                long digits = 0;
+                for (BigDecimal arg : args) digits = Math.max(digits, arg.precision());
+                yield digits;
+            }
+        };
+    }
+
+    private long check(boolean binomial, BigDecimal total, BigDecimal chosen) {
+        // Invalid arguments are left to Combinatorics, as is r > n, which is 0.
+        if (total.signum() < 0 || chosen.signum() < 0 || !BigMath.isIntegral(total) || !BigMath.isIntegral(chosen)
+                || chosen.compareTo(total) > 0) {
+            return 0;
+        }
+        double n = total.doubleValue(), r = chosen.doubleValue();
+        if (!binomial) return checkDigits((long) Math.ceil(lnFallingFactorial(n, n - r) * LOG10_E) + 1);
+
+        r = Math.min(r, n - r);
+        if (n > Combinatorics.factorialLimit()) checkDigits((long) Math.ceil(lnFallingFactorial(n, n - r) * LOG10_E) + 1);
+        return checkDigits((long) Math.ceil((lnFallingFactorial(n, n - r) - lnFactorial(r)) * LOG10_E) + 1);
+    }
+
+    // BigMath.pow at 'precision'. Integral exponents are repeated squaring at the precision; others are
+    // exp(y ln x), carried at as many more digits as y has before the point, with ln costing x's magnitude.
+    private static long powDigits(BigDecimal x, BigDecimal y, int precision) {
+        if (BigMath.isIntegral(y) && integerDigits(y) <= 9) return precision;
+        return precision + Math.max(0, integerDigits(y)) + Math.abs(integerDigits(x));
+    }
+
+    private void checkExponent(BigDecimal exponent) {
+        if (exponent.signum() > 0 && (integerDigits(exponent) > 10 || exponent.longValue() > maxExponent)) {
+            throw new BudgetExceededException("Exponent " + exponent.toPlainString() + " exceeds the limit of " + maxExponent);
+        }
+    }
+
+    private long checkDigits(long digits) {
+        if (digits > maxDigits) {
+            throw new BudgetExceededException("Result would have about " + digits + " digits, over the limit of " + maxDigits);
+        }
+        return digits;
+    }
+
+    private void checkScale(long scale) {
+        if (scale > maxScale) {
+            throw new BudgetExceededException("Result would have " + scale + " decimal places, over the limit of " + maxScale);
+        }
+    }
+
+    // Digits before the decimal point; zero or negative for values below 1.
+    private static long integerDigits(BigDecimal value) {
+        return (long) value.precision() - value.scale();
+    }
+
+    // Stirling: ln n! ~ n ln(n / e) + ln(2 pi n) / 2, a slight underestimate that the callers' rounding up covers.
+    private static double lnFactorial(double n) {
+        if (n < 2) return 0;
+        return n * (Math.log(n) - 1) + Math.log(2 * Math.PI * n) / 2;
+    }
+
+    // ln(n! / m!) for n >= m, from Stirling with n ln n - m ln m rearranged so that n and m close together don't cancel.
+    private static double lnFallingFactorial(double n, double m) {
+        if (m < 2) return lnFactorial(n);
+        double k = n - m;
+        return k * Math.log(n) - m * Math.log1p(-k / n) - k + Math.log(n / m) / 2;
+    }
+
+    private static double log10(BigInteger value) {
+        int bits = value.bitLength();
+        if (bits == 0) return 0;
+        if (bits < 1000) return Math.log10(Math.abs(value.doubleValue()));
+        int shift = bits - 64;
+        return Math.log10(Math.abs(value.shiftRight(shift).doubleValue())) + shift * LOG10_2;
+    }
+}
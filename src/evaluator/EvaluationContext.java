@@ -0,0 +1,272 @@
+package evaluator;
+
+import Exceptions.BudgetExceededException;
+import Exceptions.EvaluatorException;
+import identifier.Functions;
+import identifier.Functions.Function;
+import identifier.NativeFunctions;
+import identifier.NativeFunctions.NativeFunction;
+import identifier.Slots;
+import identifier.Variables;
+import lexer.Token.OperatorToken;
+import lexer.Token.SuffixToken;
+import math.BigMath;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+public class EvaluationContext {
+    // Operations between deadline checks; reading the clock on every one would cost more than the arithmetic.
+    private static final int DEADLINE_INTERVAL = 256;
+    private static final int LARGE_DIGITS = 1_000;
+
+    private final Map<String, BigDecimal> variables;
+    private final Map<String, Function> functions;
+    // The same definitions indexed by Slots, read by resolved trees; a null slot falls through to the built-ins.
+    private BigDecimal[] variableSlots;
+    private Function[] functionSlots;
+    // Argument frames of the calls in progress; parameters are read by position.
+    private final ArrayDeque<BigDecimal[]> callStack = new ArrayDeque<>();
+    // Operand space for stack programs, kept between evaluations. Each evaluation works above 'operandsTop' and
+    // hands its slots back cleared, so no result stays reachable and a nested one can't clobber its caller.
+    private BigDecimal[] operands = new BigDecimal[16];
+    private int operandsTop;
+    // Argument frames for the DoubleCompiler's calls, one per call level; see doubleFrame.
+    private double[][] doubleFrames = new double[4][];
+    // Precision of every operation. UNLIMITED keeps arithmetic exact, dividing to 20 places; anything else rounds
+    // each result and reads the built-in constants from 'constants', computed at that precision.
+    private MathContext mathContext = MathContext.UNLIMITED;
+    private BigDecimal[] constants;
+    // Work done since startBudget; not counted at all while the budget is UNLIMITED.
+    private Budget budget = Budget.UNLIMITED;
+    private long operations;
+    private long deadline;
+    private final BigMath.Deadline clock = this::checkDeadline;
+
+    public EvaluationContext() {
+        this.variables = new HashMap<>();
+        this.functions = new HashMap<>();
+        this.variableSlots = new BigDecimal[16];
+        this.functionSlots = new Function[0];
+        putVariable("ans", BigDecimal.ZERO);
+    }
+
+    private EvaluationContext(EvaluationContext parent) {
+        this.variables = new HashMap<>(parent.variables);
+        this.functions = new HashMap<>(parent.functions);
+        this.variableSlots = parent.variableSlots.clone();
+        this.functionSlots = parent.functionSlots.clone();
+        this.mathContext = parent.mathContext;
+        this.constants = parent.constants;
+        setBudget(parent.budget);
+    }
+
+    // Copies this context's own definitions; built-ins stay shared through Variables and Functions.
+    public EvaluationContext fork() {
+        return new EvaluationContext(this);
+    }
+
+    // Values are read at the context's precision, like literals, whatever precision they were set at.
+    // 'name' is only used for the error message.
+    public BigDecimal getVariable(int slot, String name) {
+        BigDecimal value = slot < variableSlots.length ? variableSlots[slot] : null;
+        if (value != null) return value.round(mathContext);
+
+        if (constants != null && slot < constants.length && constants[slot] != null) return constants[slot];
+        value = Variables.valueAt(slot);
+        if (value != null) return value.round(mathContext);
+
+        throw new EvaluatorException("Variable not found: " + name);
+    }
+
+    public BigDecimal getLocal(int slot) {
+        return callStack.peek()[slot];
+    }
+
+    public boolean hasVariable(String name) {
+        return variables.containsKey(name) || Variables.includes(name);
+    }
+
+    public void setVariable(String name, BigDecimal value) {
+        if (Variables.isConstant(name)) {
+            throw new RuntimeException(String.format("Variable %s is a constant", name));
+        }
+        putVariable(name, value);
+    }
+
+    public void removeVariable(String name) {
+        if (variables.remove(name) != null) variableSlots[Slots.variable(name)] = null;
+    }
+
+    private void putVariable(String name, BigDecimal value) {
+        variables.put(name, value);
+        int slot = Slots.variable(name);
+        if (slot >= variableSlots.length) variableSlots = Slots.grow(variableSlots, slot);
+        variableSlots[slot] = value;
+    }
+
+    public Map<String, BigDecimal> getVariables() {
+        return variables;
+    }
+
+    public void defineFunction(String name, List<String> params, String body) {
+        if (NativeFunctions.includes(name)) {
+            throw new RuntimeException(String.format("Function %s is a native built-in", name));
+        }
+        NodeType bodyTree = resolve(optimize(parse(tokenize(body)), params), params);
+        defineFunction(name, new Function(params, bodyTree));
+    }
+
+    // 'function' must already be resolved against its parameters, as LibraryFile restores them.
+    public void defineFunction(String name, Function function) {
+        if (NativeFunctions.includes(name)) {
+            throw new RuntimeException(String.format("Function %s is a native built-in", name));
+        }
+        functions.put(name, function);
+
+        int slot = Slots.function(name);
+        if (slot >= functionSlots.length) functionSlots = Slots.grow(functionSlots, slot);
+        functionSlots[slot] = function;
+    }
+
+    public Map<String, Function> getFunctions() {
+        return Collections.unmodifiableMap(functions);
+    }
+
+    // By name, for definitions and dependency checks; the slot is the name's for good, so both find the same function.
+    public Function findFunction(String name) {
+        return findFunction(Slots.function(name));
+    }
+
+    public Function findFunction(int slot) {
+        Function function = slot < functionSlots.length ? functionSlots[slot] : null;
+        return function != null ? function : Functions.findAt(slot);
+    }
+
+    public Function getFunction(int slot, String name) {
+        Function function = findFunction(slot);
+        if (function == null) throw new RuntimeException("Function not found: " + name);
+        return function;
+    }
+
+    public boolean hasFunction(String name) {
+        return findFunction(name) != null;
+    }
+
+    public MathContext getMathContext() {
+        return mathContext;
+    }
+
+    // Precision 0 restores exact arithmetic; otherwise at least Evaluator.MIN_PRECISION digits.
+    public void setMathContext(MathContext mathContext) {
+        int precision = mathContext.getPrecision();
+        if (precision != 0 && precision < Evaluator.MIN_PRECISION) {
+            throw new IllegalArgumentException("Precision must be 0 or at least " + Evaluator.MIN_PRECISION + " digits");
+        }
+        this.mathContext = mathContext;
+        this.constants = precision == 0 ? null : Variables.constantsAt(mathContext);
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+        startBudget();
+    }
+
+    // Starts a fresh allowance of operations and time; callers do this once per top-level evaluation.
+    public void startBudget() {
+        operations = 0;
+        if (budget.timeout() != null) deadline = System.nanoTime() + budget.timeout().toNanos();
+    }
+
+    // Counts one operation with nothing to estimate, such as a user function call.
+    public void charge() {
+        if (budget == Budget.UNLIMITED) return;
+        count(0);
+    }
+
+    public void charge(OperatorToken operator, BigDecimal left, BigDecimal right) {
+        if (budget == Budget.UNLIMITED) return;
+        count(budget.check(operator, left, right, mathContext));
+    }
+
+    public void charge(SuffixToken suffix, BigDecimal value) {
+        if (budget == Budget.UNLIMITED) return;
+        count(budget.check(suffix, value));
+    }
+
+    public void charge(NativeFunction function, BigDecimal[] args) {
+        if (budget == Budget.UNLIMITED) return;
+        count(budget.check(function, args, mathContext.getPrecision() == 0 ? Evaluator.MATH_CONTEXT : mathContext));
+    }
+
+    // What BigMath polls inside a single long operation, or null when the budget has no time limit.
+    public BigMath.Deadline getDeadline() {
+        return budget.timeout() == null ? null : clock;
+    }
+
+    // The clock is read every DEADLINE_INTERVAL operations, and before any operation large enough that reading it
+    // costs nothing in comparison.
+    private void count(long digits) {
+        if (++operations > budget.maxOperations()) {
+            throw new BudgetExceededException("Evaluation exceeded the limit of " + budget.maxOperations() + " operations");
+        }
+        if ((operations % DEADLINE_INTERVAL == 0 || digits > LARGE_DIGITS) && budget.timeout() != null) checkDeadline();
+    }
+
+    private void checkDeadline() {
+        if (System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededException("Evaluation exceeded its time limit of " + budget.timeout().toMillis() + " ms");
+        }
+    }
+
+    // Reserves 'size' slots of getOperands() and returns the first. A nested reservation may replace the array, so
+    // callers keep the one they got; it stays theirs until releaseOperands.
+    public int reserveOperands(int size) {
+        int base = operandsTop;
+        if (base + size > operands.length) operands = Arrays.copyOf(operands, Math.max(operands.length * 2, base + size));
+        operandsTop = base + size;
+        return base;
+    }
+
+    public BigDecimal[] getOperands() {
+        return operands;
+    }
+
+    public void releaseOperands(int base) {
+        Arrays.fill(operands, base, operandsTop, null);
+        operandsTop = base;
+    }
+
+    // A frame of at least 'size' doubles for a call at 'level', kept between calls. Calls at one level never overlap:
+    // anything a call's arguments or body calls is a level further in.
+    public double[] doubleFrame(int level, int size) {
+        if (level >= doubleFrames.length) doubleFrames = Arrays.copyOf(doubleFrames, Math.max(doubleFrames.length * 2, level + 1));
+        double[] frame = doubleFrames[level];
+        if (frame == null || frame.length < size) doubleFrames[level] = frame = new double[Math.max(size, 4)];
+        return frame;
+    }
+
+    void pushFrame(BigDecimal[] frame) {
+        callStack.push(frame);
+    }
+
+    void popFrame() {
+        callStack.pop();
+    }
+}
@@ -2,108 +2,271 @@ package evaluator;
 
 import Exceptions.EvaluatorException;
 import identifier.Functions;
-import identifier.Variables;
-import lexer.Token;
+import identifier.NativeFunctions.NativeFunction;
+import lexer.Token.*;
+import math.BigMath;
+import math.Combinatorics;
 import parser.Node.*;
+import parser.Trees;
 
 import java.math.BigDecimal;
+import java.math.MathContext;
 import java.math.RoundingMode;
-import java.util.ArrayDeque;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
-import static identifier.Functions.getFunction;
-
 public class Evaluator {
-    private static final ArrayDeque<HashMap<String, BigDecimal>> variablesStack = new ArrayDeque<>();
+    // Precision for results that cannot be exact: fractional and negative powers and native math functions.
+    // Contexts with a MathContext of their own use it for these and for every other operation too.
+    public static final MathContext MATH_CONTEXT = MathContext.DECIMAL128;
+    // The lowest precision a context may set. Optimizer folds only results this short, which no context rounds.
+    public static final int MIN_PRECISION = 16;
+    // Tree levels evaluated by plain recursion before switching to the explicit stack; -Dcalc.evaluator.recursionLimit.
+    private static final int RECURSION_LIMIT = Integer.getInteger("calc.evaluator.recursionLimit", 256);
+
+    // 'node' must be resolved: every name is read by its slot, and a VariableNode or FunctionNode left in the tree
+    // is an IllegalStateException rather than a lookup by name.
+    public static BigDecimal evaluate(NodeType node, EvaluationContext context) {
+        return evaluate(node, context, RECURSION_LIMIT);
+    }
+
+    // Recurses for the first 'recursionLimit' levels, which is fastest for ordinary expressions, and hands
+    // anything deeper to an explicit-stack loop so long chains and heavy nesting can't overflow the call stack.
+    // 0 evaluates fully iteratively; Integer.MAX_VALUE fully recursively.
+    public static BigDecimal evaluate(NodeType node, EvaluationContext context, int recursionLimit) {
+        if (recursionLimit <= 0) return evaluateIteratively(node, context);
+        final int limit = recursionLimit - 1;
 
-    public static BigDecimal evaluate(NodeType node) {
         return switch (node) {
-            case NumberNode n -> n.value();
-            case BinaryOperationNode b -> {
-                BigDecimal left = evaluate(b.left());
-                BigDecimal right = evaluate(b.right());
-                yield switch (b.operator()) {
-                    case ADD -> left.add(right);
-                    case SUB -> left.subtract(right);
-                    case MUL -> left.multiply(right);
-                    case DIV -> {
-                        if (right.compareTo(BigDecimal.ZERO) == 0) throw new EvaluatorException("Division by zero.");
-                        else yield left.divide(right, 20, RoundingMode.HALF_UP);
+            case NumberNode n -> n.value().round(context.getMathContext());
+            case BinaryOperationNode b -> binary(b.operator(), evaluate(b.left(), context, limit), evaluate(b.right(), context, limit), context);
+            case PrefixOperationNode p -> prefix(p.prefix(), evaluate(p.value(), context, limit));
+            case SuffixOperationNode s -> suffix(s.suffix(), evaluate(s.value(), context, limit), context);
+            case LocalNode l -> context.getLocal(l.slot());
+            case GlobalNode g -> context.getVariable(g.slot(), g.variable().identifier());
+            case VariableNode v -> throw unresolved(v);
+            case FunctionNode f -> throw unresolved(f);
+            case CallNode c -> call(c.slot(), c.function().identifier(), evaluateArgs(c.args(), context, limit), context);
+            case NativeFunctionNode n -> apply(n.target(), evaluateArgs(n.args(), context, limit), context);
+        };
+    }
+
+    private static BigDecimal[] evaluateArgs(List<NodeType> nodes, EvaluationContext context, int recursionLimit) {
+        final int argsSize = nodes.size();
+        BigDecimal[] args = new BigDecimal[argsSize];
+        for (int i = 0; i < argsSize; i++) {
+            args[i] = evaluate(nodes.get(i), context, recursionLimit);
+        }
+        return args;
+    }
+
+    // Post-order with explicit node and value stacks; a node is pushed once to expand its children and
+    // once more, marked expanded, to combine their values.
+    private static BigDecimal evaluateIteratively(NodeType node, EvaluationContext context) {
+        NodeType[] nodes = new NodeType[16];
+        boolean[] expanded = new boolean[16];
+        BigDecimal[] values = new BigDecimal[16];
+        int top = 0;
+        int count = 0;
+        nodes[top++] = node;
+
+        while (top > 0) {
+            NodeType current = nodes[--top];
+            BigDecimal value;
+
+            if (!expanded[top]) {
+                value = switch (current) {
+                    case NumberNode n -> n.value().round(context.getMathContext());
+                    case LocalNode l -> context.getLocal(l.slot());
+                    case GlobalNode g -> context.getVariable(g.slot(), g.variable().identifier());
+                    case VariableNode v -> throw unresolved(v);
+                    case FunctionNode f -> throw unresolved(f);
+                    default -> null;
+                };
+
+                if (value == null) {
+                    List<NodeType> children = switch (current) {
+                        case BinaryOperationNode b -> null;
+                        case PrefixOperationNode p -> null;
+                        case SuffixOperationNode s -> null;
+                        default -> Trees.children(current);
+                    };
+                    int size = children == null ? 2 : children.size();
+                    if (top + size + 1 > nodes.length) {
+                        int length = Math.max(nodes.length * 2, top + size + 1);
+                        nodes = Arrays.copyOf(nodes, length);
+                        expanded = Arrays.copyOf(expanded, length);
                     }
-                    case MOD -> {
-                        if (right.compareTo(BigDecimal.ZERO) == 0) throw new EvaluatorException("Division by zero.");
-                        else yield left.remainder(right);
+                    nodes[top] = current;
+                    expanded[top++] = true;
+                    switch (current) {
+                        case BinaryOperationNode b -> {
+                            nodes[top++] = b.right();
+                            nodes[top++] = b.left();
+                        }
+                        case PrefixOperationNode p -> nodes[top++] = p.value();
+                        case SuffixOperationNode s -> nodes[top++] = s.value();
+                        default -> {
+                            for (int i = children.size() - 1; i >= 0; i--) nodes[top++] = children.get(i);
+                        }
                     }
-                    case POW -> {
-                        if (right.scale() <= 0) yield left.pow(right.intValue());
-                        else yield BigDecimal.valueOf(Math.pow(left.doubleValue(), right.doubleValue()));
+                    continue;
+                }
+            } else {
+                expanded[top] = false;
+                value = switch (current) {
+                    case BinaryOperationNode b -> {
+                        BigDecimal right = values[--count];
+                        yield binary(b.operator(), values[--count], right, context);
                     }
+                    case PrefixOperationNode p -> prefix(p.prefix(), values[--count]);
+                    case SuffixOperationNode s -> suffix(s.suffix(), values[--count], context);
+                    case CallNode c -> {
+                        BigDecimal[] args = Arrays.copyOfRange(values, count - c.args().size(), count);
+                        count -= args.length;
+                        yield call(c.slot(), c.function().identifier(), args, context);
+                    }
+                    case NativeFunctionNode n -> {
+                        BigDecimal[] args = Arrays.copyOfRange(values, count - n.args().size(), count);
+                        count -= args.length;
+                        yield apply(n.target(), args, context);
+                    }
+                    default -> throw new IllegalStateException("Leaf node expanded: " + current);
                 };
             }
-            case PrefixOperationNode p -> {
-                BigDecimal value = evaluate(p.value());
-                yield switch (p.prefix()) {
-                    case Token.PrefixToken.PLUS -> value;
-                    case Token.PrefixToken.MINUS -> value.negate();
-                };
-            }
-            case SuffixOperationNode s -> {
-                BigDecimal value = evaluate(s.value());
-                yield switch (s.suffix()) {
-                    case THOUSAND -> value.scaleByPowerOfTen(3);
-                    case MILLION -> value.scaleByPowerOfTen(6);
-                    case BILLION -> value.scaleByPowerOfTen(9);
-                    case TRILLION -> value.scaleByPowerOfTen(12);
-                    case FACTORIAL -> factorial(value);
-                };
-            }
-            case VariableNode v -> resolveVariable(v.variable().identifier());
-            case FunctionNode f -> {
-                Functions.Function func = getFunction(f.function().identifier());
-                List<String> params = func.params();
-                final int paramsSize = params.size();
-
-                if (f.args().size() != paramsSize) {
-                    throw new EvaluatorException("Function '" + f.function().identifier() + "' expects " + paramsSize + " args, got " + f.args().size());
-                }
-
-                HashMap<String, BigDecimal> scope = new HashMap<>(paramsSize);
-                for (int i = 0; i < paramsSize; i++) {
-                    scope.put(params.get(i), evaluate(f.args().get(i)));
-                }
 
-                variablesStack.push(scope);
-                BigDecimal result =  evaluate(func.body());
-                variablesStack.pop();
-                yield result;
-            }
-        };
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = value;
+        }
+        return values[0];
     }
 
-    private static BigDecimal resolveVariable(String name) {
-        HashMap<String, BigDecimal> scope = variablesStack.peek();
-        if (scope != null && scope.containsKey(name)) return scope.get(name);
+    private static IllegalStateException unresolved(NodeType node) {
+        return new IllegalStateException("Unresolved name, resolve the tree first: " + node);
+    }
 
-        if (Variables.includes(name)) return Variables.get(name);
+    // Evaluates with 'frame' as the current call frame, for trees resolved against a parameter list.
+    public static BigDecimal evaluate(NodeType node, BigDecimal[] frame, EvaluationContext context) {
+        context.pushFrame(frame);
+        try {
+            return evaluate(node, context);
+        } finally {
+            context.popFrame();
+        }
+    }
 
-        throw new EvaluatorException("Variable not found: " + name);
+    public static BigDecimal call(int slot, String name, BigDecimal[] args, EvaluationContext context) {
+        return call(name, context.getFunction(slot, name), args, context);
     }
 
-    private static BigDecimal factorial(BigDecimal value) {
-        if (value.signum() < 0 || value.stripTrailingZeros().scale() > 0) {
-            throw new ArithmeticException("Factorial only works for positive integers rn");
+    // Bodies are resolved against their parameter list, so 'args' is the frame as it stands.
+    private static BigDecimal call(String name, Functions.Function func, BigDecimal[] args, EvaluationContext context) {
+        final int paramsSize = func.params().size();
+        if (args.length != paramsSize) {
+            throw new EvaluatorException("Function '" + name + "' expects " + paramsSize + " args, got " + args.length);
         }
 
-        if (value.compareTo(BigDecimal.valueOf(1000)) >= 0) {
-            throw new EvaluatorException("Factorial too large");
+        context.charge();
+        context.pushFrame(args);
+        try {
+            return evaluate(func.body(), context);
+        } finally {
+            context.popFrame();
         }
+    }
+
+    // As below, charged to the context's budget before the work is done and rounded to its MathContext.
+    // Powers can go through BigMath, which keeps to the context's deadline while it works.
+    public static BigDecimal binary(OperatorToken operator, BigDecimal left, BigDecimal right, EvaluationContext context) {
+        context.charge(operator, left, right);
+        BigMath.Deadline deadline = context.getDeadline();
+        if (operator != OperatorToken.POW || deadline == null) return binary(operator, left, right, context.getMathContext());
+        BigMath.Deadline previous = BigMath.setDeadline(deadline);
+        try {
+            return binary(operator, left, right, context.getMathContext());
+        } finally {
+            BigMath.setDeadline(previous);
+        }
+    }
+
+    public static BigDecimal suffix(SuffixToken suffix, BigDecimal value, EvaluationContext context) {
+        context.charge(suffix, value);
+        return suffix(suffix, value).round(context.getMathContext());
+    }
 
-        BigDecimal result = BigDecimal.ONE;
-        final int valueExact = value.intValueExact();
-        for (int i = 1; i <= valueExact; i++) {
-            result = result.multiply(BigDecimal.valueOf(i));
+    // Natives such as sum, round and nCr are exact, so their results are rounded here like any operator's.
+    public static BigDecimal apply(NativeFunction target, BigDecimal[] args, EvaluationContext context) {
+        context.charge(target, args);
+        BigMath.Deadline deadline = context.getDeadline();
+        if (deadline == null) return apply(target, args, context.getMathContext());
+        BigMath.Deadline previous = BigMath.setDeadline(deadline);
+        try {
+            return apply(target, args, context.getMathContext());
+        } finally {
+            BigMath.setDeadline(previous);
         }
-        return result;
+    }
+
+    private static BigDecimal apply(NativeFunction target, BigDecimal[] args, MathContext mc) {
+        if (mc.getPrecision() == 0) return target.apply(args, MATH_CONTEXT);
+        return target.apply(args, mc).round(mc);
+    }
+
+    // Every result rounded to 'mc'. Precision 0 is the exact arithmetic below.
+    public static BigDecimal binary(OperatorToken operator, BigDecimal left, BigDecimal right, MathContext mc) {
+        if (mc.getPrecision() == 0) return binary(operator, left, right);
+        return switch (operator) {
+            case ADD -> left.add(right, mc);
+            case SUB -> left.subtract(right, mc);
+            case MUL -> left.multiply(right, mc);
+            case DIV -> {
+                if (right.signum() == 0) throw new EvaluatorException("Division by zero.");
+                yield left.divide(right, mc);
+            }
+            case MOD -> {
+                // remainder(right, mc) refuses quotients longer than the precision; the remainder itself is exact.
+                if (right.signum() == 0) throw new EvaluatorException("Division by zero.");
+                yield left.remainder(right).round(mc);
+            }
+            case POW -> BigMath.pow(left, right, mc);
+        };
+    }
+
+    // Exact, except that division stops at 20 places and fractional or negative powers at MATH_CONTEXT.
+    public static BigDecimal binary(OperatorToken operator, BigDecimal left, BigDecimal right) {
+        return switch (operator) {
+            case ADD -> left.add(right);
+            case SUB -> left.subtract(right);
+            case MUL -> left.multiply(right);
+            case DIV -> {
+                if (right.compareTo(BigDecimal.ZERO) == 0) throw new EvaluatorException("Division by zero.");
+                else yield left.divide(right, 20, RoundingMode.HALF_UP);
+            }
+            case MOD -> {
+                if (right.compareTo(BigDecimal.ZERO) == 0) throw new EvaluatorException("Division by zero.");
+                else yield left.remainder(right);
+            }
+            case POW -> {
+                if (right.scale() <= 0 && right.signum() >= 0) yield left.pow(right.intValue());
+                else yield BigMath.pow(left, right, MATH_CONTEXT);
+            }
+        };
+    }
+
+    public static BigDecimal prefix(PrefixToken prefix, BigDecimal value) {
+        return switch (prefix) {
+            case PLUS -> value;
+            case MINUS -> value.negate();
+        };
+    }
+
+    public static BigDecimal suffix(SuffixToken suffix, BigDecimal value) {
+        return switch (suffix) {
+            case THOUSAND -> value.scaleByPowerOfTen(3);
+            case MILLION -> value.scaleByPowerOfTen(6);
+            case BILLION -> value.scaleByPowerOfTen(9);
+            case TRILLION -> value.scaleByPowerOfTen(12);
+            case FACTORIAL -> Combinatorics.factorial(value);
+        };
     }
 }
\ No newline at end of file
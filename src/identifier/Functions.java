@@ -5,20 +5,54 @@ import parser.Node.NodeType;
 import java.util.*;
 
 import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
 import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
 
 public class Functions {
     public record Function(List<String> params, NodeType body) {
     }
 
-    private static final Map<String, Function> functionMap = new HashMap<>();
+    // Copy-on-write, like Variables, so sessions on other threads can read it without locking.
+    private static volatile Map<String, Function> functionMap = Map.of();
+    // The same functions indexed by Slots.function, for resolved trees.
+    private static volatile Function[] functionSlots = new Function[16];
+
+    // Built-ins are kept as source and compiled on first lookup, so a short-lived process only parses the
+    // ones it calls. Both tables are filled once below and only read afterwards.
+    private record Source(List<String> params, String body) {
+    }
+
+    private static final Map<String, Source> builtins = new HashMap<>();
+    private static String[] builtinSlots = new String[16];
 
     static {
-        add("cube", List.of("x"), "x^3");
-        add("sqrt", List.of("x"), "x^0.5");
-        add("power", List.of("x", "y"), "x^y");
-        add("sum", List.of("x", "y"), "x+y");
-        add("test", List.of("x", "y", "z"), "x^2-3*y+4z+0.5");
+        builtin("cube", List.of("x"), "x^3");
+        builtin("power", List.of("x", "y"), "x^y");
+        builtin("test", List.of("x", "y", "z"), "x^2-3*y+4z+0.5");
+    }
+
+    private static void builtin(String name, List<String> params, String body) {
+        builtins.put(name, new Source(params, body));
+        int slot = Slots.function(name);
+        if (slot >= builtinSlots.length) builtinSlots = Slots.grow(builtinSlots, slot);
+        builtinSlots[slot] = name;
+    }
+
+    // Compiles a built-in unless it has been compiled or replaced already; null if 'name' isn't one.
+    private static synchronized Function load(String name) {
+        Function function = functionMap.get(name);
+        if (function != null) return function;
+
+        Source source = builtins.get(name);
+        if (source == null) return null;
+        function = new Function(source.params(), resolve(optimize(parse(tokenize(source.body())), source.params()), source.params()));
+        put(name, function);
+        return function;
+    }
+
+    private static void loadAll() {
+        for (String name : builtins.keySet()) load(name);
     }
 
     private static List<String> parseParams(String paramString) {
@@ -49,33 +83,85 @@ public class Functions {
         add(name, params, body);
     }
 
-    public static void add(String name, List<String> params, String body) {
+    public static synchronized void add(String name, List<String> params, String body) {
+        if (NativeFunctions.includes(name)) {
+            throw new RuntimeException(String.format("Function %s is a native built-in", name));
+        }
         if (includes(name)) {
             throw new RuntimeException(String.format("Function %s already defined", name));
         }
-        NodeType bodyTree = parse(tokenize(body));
-        functionMap.put(name, new Function(params, bodyTree));
+        NodeType bodyTree = resolve(optimize(parse(tokenize(body)), params), params);
+        put(name, new Function(params, bodyTree));
     }
 
-    public static void set(String name, List<String> params, String body) {
+    public static synchronized void set(String name, List<String> params, String body) {
         if (!includes(name)) {
             throw new RuntimeException(String.format("Function %s has not been defined", name));
         }
-        NodeType bodyTree = parse(tokenize(body));
-        functionMap.replace(name, new Function(params, bodyTree));
+        NodeType bodyTree = resolve(optimize(parse(tokenize(body)), params), params);
+        put(name, new Function(params, bodyTree));
+    }
+
+    // Installs already compiled functions, replacing any with the same name, and publishes them in one copy.
+    public static synchronized void putAll(Map<String, Function> functions) {
+        Map<String, Function> copy = new HashMap<>(functionMap);
+        Function[] slots = functionSlots.clone();
+        for (Map.Entry<String, Function> entry : functions.entrySet()) {
+            String name = entry.getKey();
+            if (NativeFunctions.includes(name)) {
+                throw new RuntimeException(String.format("Function %s is a native built-in", name));
+            }
+            copy.put(name, entry.getValue());
+            int slot = Slots.function(name);
+            if (slot >= slots.length) slots = Slots.grow(slots, slot);
+            slots[slot] = entry.getValue();
+        }
+
+        functionSlots = slots;
+        functionMap = copy;
+    }
+
+    private static void put(String name, Function function) {
+        Map<String, Function> copy = new HashMap<>(functionMap);
+        copy.put(name, function);
+
+        int slot = Slots.function(name);
+        Function[] functions = slot < functionSlots.length ? functionSlots.clone() : Slots.grow(functionSlots, slot);
+        functions[slot] = function;
+
+        functionSlots = functions;
+        functionMap = copy;
     }
 
     public static boolean includes(String name) {
-        return functionMap.containsKey(name);
+        return functionMap.containsKey(name) || builtins.containsKey(name);
+    }
+
+    public static Function find(String name) {
+        Function function = functionMap.get(name);
+        return function != null ? function : load(name);
+    }
+
+    public static Function findAt(int slot) {
+        Function[] functions = functionSlots;
+        Function function = slot < functions.length ? functions[slot] : null;
+        if (function != null || slot >= builtinSlots.length || builtinSlots[slot] == null) return function;
+        return load(builtinSlots[slot]);
     }
 
     public static Function getFunction(String name) {
-        Function f = functionMap.get(name);
+        Function f = find(name);
         if (f == null) throw new RuntimeException("Function not found: " + name);
         return f;
     }
 
     public static Collection<Function> getFunctions() {
-        return functionMap.values();
+        loadAll();
+        return Collections.unmodifiableCollection(functionMap.values());
+    }
+
+    public static Map<String, Function> getFunctionMap() {
+        loadAll();
+        return Collections.unmodifiableMap(functionMap);
     }
 }
\ No newline at end of file
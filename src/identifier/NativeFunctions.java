@@ -0,0 +1,174 @@
+package identifier;
+
+import Exceptions.EvaluatorException;
+import math.BigMath;
+import math.Combinatorics;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// Built-ins implemented in Java. The parser binds calls to these directly, so they can't be redefined or shadowed.
+public class NativeFunctions {
+    public static final int VARIADIC = -1;
+
+    @FunctionalInterface
+    public interface Implementation {
+        BigDecimal apply(BigDecimal[] args, MathContext mc);
+    }
+
+    // The first 'count' elements of 'args' are the arguments, so callers can pass an array they reuse.
+    @FunctionalInterface
+    public interface DoubleImplementation {
+        double apply(double[] args, int count);
+    }
+
+    // 'unary' and 'binary' are set for functions of exactly one or two arguments, which compiled double code calls
+    // with the arguments in hand instead of an array; for the rest they are null.
+    public record NativeFunction(String name, int minArgs, int maxArgs, Implementation implementation,
+                                 DoubleImplementation doubleImplementation, DoubleUnaryOperator unary,
+                                 DoubleBinaryOperator binary) {
+        public boolean accepts(int args) {
+            return args >= minArgs && (maxArgs == VARIADIC || args <= maxArgs);
+        }
+
+        public String arity() {
+            if (maxArgs == VARIADIC) return "at least " + minArgs;
+            if (minArgs == maxArgs) return String.valueOf(minArgs);
+            return minArgs + " to " + maxArgs;
+        }
+
+        public BigDecimal apply(BigDecimal[] args, MathContext mc) {
+            return implementation.apply(args, mc);
+        }
+
+        public double apply(double[] args) {
+            return doubleImplementation.apply(args, args.length);
+        }
+
+        public double apply(double[] args, int count) {
+            return doubleImplementation.apply(args, count);
+        }
+    }
+
+    private static final Map<String, NativeFunction> nativeMap = new HashMap<>();
+
+    static {
+        unary("abs", (a, mc) -> a[0].abs(), Math::abs);
+        unary("floor", (a, mc) -> a[0].setScale(0, RoundingMode.FLOOR), Math::floor);
+        unary("ceil", (a, mc) -> a[0].setScale(0, RoundingMode.CEILING), Math::ceil);
+        add("round", 1, 2, NativeFunctions::round, NativeFunctions::round);
+        add("min", 1, VARIADIC, NativeFunctions::min, NativeFunctions::min);
+        add("max", 1, VARIADIC, NativeFunctions::max, NativeFunctions::max);
+        add("sum", 1, VARIADIC, NativeFunctions::sum, NativeFunctions::sum);
+        add("avg", 1, VARIADIC, (a, mc) -> sum(a, mc).divide(BigDecimal.valueOf(a.length), mc), (a, n) -> sum(a, n) / n);
+
+        unary("sqrt", (a, mc) -> BigMath.sqrt(a[0], mc), Math::sqrt);
+        unary("exp", (a, mc) -> BigMath.exp(a[0], mc), Math::exp);
+        unary("ln", (a, mc) -> BigMath.ln(a[0], mc), Math::log);
+        unary("log10", (a, mc) -> BigMath.log10(a[0], mc), Math::log10);
+        unary("sin", (a, mc) -> BigMath.sin(a[0], mc), Math::sin);
+        unary("cos", (a, mc) -> BigMath.cos(a[0], mc), Math::cos);
+        unary("tan", (a, mc) -> BigMath.tan(a[0], mc), Math::tan);
+        unary("atan", (a, mc) -> BigMath.atan(a[0], mc), Math::atan);
+        binary("pow", (a, mc) -> BigMath.pow(a[0], a[1], mc), Math::pow);
+
+        binary("nCr", (a, mc) -> Combinatorics.binomial(a[0], a[1]), Combinatorics::binomial);
+        binary("nPr", (a, mc) -> Combinatorics.permutations(a[0], a[1]), Combinatorics::permutations);
+    }
+
+    private static void add(String name, int minArgs, int maxArgs, Implementation implementation,
+                            DoubleImplementation doubleImplementation) {
+        nativeMap.put(name, new NativeFunction(name, minArgs, maxArgs, implementation, doubleImplementation, null, null));
+    }
+
+    private static void unary(String name, Implementation implementation, DoubleUnaryOperator unary) {
+        nativeMap.put(name, new NativeFunction(name, 1, 1, implementation, (a, n) -> unary.applyAsDouble(a[0]), unary, null));
+    }
+
+    private static void binary(String name, Implementation implementation, DoubleBinaryOperator binary) {
+        nativeMap.put(name, new NativeFunction(name, 2, 2, implementation, (a, n) -> binary.applyAsDouble(a[0], a[1]), null, binary));
+    }
+
+    public static boolean includes(String name) {
+        return nativeMap.containsKey(name);
+    }
+
+    public static NativeFunction find(String name) {
+        return nativeMap.get(name);
+    }
+
+    public static Collection<NativeFunction> getNativeFunctions() {
+        return Collections.unmodifiableCollection(nativeMap.values());
+    }
+
+    private static BigDecimal round(BigDecimal[] args, MathContext mc) {
+        int places = args.length > 1 ? places(args[1]) : 0;
+        return args[0].setScale(places, RoundingMode.HALF_UP);
+    }
+
+    // Half away from zero, as HALF_UP does above. From 2^52 up a double has no fraction left to round, and a scaled
+    // value that large, infinite or NaN means 'places' is past the double's precision, so those are returned as is.
+    private static double round(double[] args, int count) {
+        double scale = Math.pow(10, count > 1 ? places(BigDecimal.valueOf(args[1])) : 0);
+        double scaled = Math.abs(args[0]) * scale;
+        if (!(scaled < 0x1p52)) return args[0];
+        // Below 2^52 the fraction is exact, unlike scaled + 0.5 which rounds 0.49999999999999994 up.
+        double whole = Math.floor(scaled);
+        if (scaled - whole >= 0.5) whole++;
+        return Math.copySign(whole / scale, args[0]);
+    }
+
+    private static int places(BigDecimal value) {
+        if (!BigMath.isIntegral(value) || value.signum() < 0 || value.compareTo(BigDecimal.valueOf(1000)) > 0) {
+            throw new EvaluatorException("Decimal places must be an integer between 0 and 1000");
+        }
+        return value.intValue();
+    }
+
+    private static BigDecimal min(BigDecimal[] args, MathContext mc) {
+        BigDecimal result = args[0];
+        for (BigDecimal arg : args) {
+            if (arg.compareTo(result) < 0) result = arg;
+        }
+        return result;
+    }
+
+    private static double min(double[] args, int count) {
+        double result = args[0];
+        for (int i = 0; i < count; i++) result = Math.min(result, args[i]);
+        return result;
+    }
+
+    private static BigDecimal max(BigDecimal[] args, MathContext mc) {
+        BigDecimal result = args[0];
+        for (BigDecimal arg : args) {
+            if (arg.compareTo(result) > 0) result = arg;
+        }
+        return result;
+    }
+
+    private static double max(double[] args, int count) {
+        double result = args[0];
+        for (int i = 0; i < count; i++) result = Math.max(result, args[i]);
+        return result;
+    }
+
+    private static BigDecimal sum(BigDecimal[] args, MathContext mc) {
+        BigDecimal result = BigDecimal.ZERO;
+        for (BigDecimal arg : args) result = result.add(arg);
+        return result;
+    }
+
+    private static double sum(double[] args, int count) {
+        double result = 0;
+        for (int i = 0; i < count; i++) result += args[i];
+        return result;
+    }
+}
@@ -0,0 +1,27 @@
+package identifier;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Numbers every variable and function name once, so resolved trees and the tables they read use array indices.
+// Slots are never reused; a name keeps its index for the life of the process.
+public class Slots {
+    private static final ConcurrentHashMap<String, Integer> variableSlots = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Integer> functionSlots = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextVariable = new AtomicInteger();
+    private static final AtomicInteger nextFunction = new AtomicInteger();
+
+    public static int variable(String name) {
+        return variableSlots.computeIfAbsent(name, n -> nextVariable.getAndIncrement());
+    }
+
+    public static int function(String name) {
+        return functionSlots.computeIfAbsent(name, n -> nextFunction.getAndIncrement());
+    }
+
+    // Returns a copy of 'table' long enough to hold 'slot'.
+    public static <T> T[] grow(T[] table, int slot) {
+        return Arrays.copyOf(table, Math.max(slot + 1, table.length * 2));
+    }
+}
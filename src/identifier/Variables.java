@@ -1,71 +1,172 @@
 package identifier;
 
+import math.BigMath;
+
 import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 public class Variables {
-    private static final Map<String, BigDecimal> variableMap = new HashMap<>();
+    // Copy-on-write: readers on any thread see an immutable snapshot, writers publish a new one.
+    private static volatile Map<String, BigDecimal> variableMap = Map.of();
+    // The same values indexed by Slots.variable, for resolved trees.
+    private static volatile BigDecimal[] valueSlots = new BigDecimal[32];
+    private static final Set<String> constants = new HashSet<>();
+    // Irrational constants are recomputed for a MathContext rather than rounded from the 50 digits below.
+    private static final Map<String, Function<MathContext, BigDecimal>> computed = Map.of(
+            "pi", BigMath::pi,
+            "e", mc -> BigMath.exp(BigDecimal.ONE, mc),
+            "phi", Variables::phi);
+    // The constants at the precisions used most recently. A session can set any number of precisions over its life,
+    // and constants at a high one are large, so only the last few are kept. Tune with -Dcalc.constants.cacheSize.
+    private static final int CONSTANTS_CAPACITY = Integer.getInteger("calc.constants.cacheSize", 8);
+    private static final Map<MathContext, BigDecimal[]> constantsByContext = new LinkedHashMap<>(CONSTANTS_CAPACITY + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MathContext, BigDecimal[]> eldest) {
+            return size() > CONSTANTS_CAPACITY;
+        }
+    };
     static {
-        add("pi", "3.14159265358979323846264338327950288419716939937510");
-        add("phi", "1.61803398874989484820458683436563811772030917980576");
-        add("e", "2.71828182845904523536028747135266249775724709369995");
-        add("g", "9.81");
-        add("one", "1");
-        add("two", "2");
-        add("three", "3");
-        add("four", "4");
-        add("five", "5");
-        add("six", "6");
-        add("seven", "7");
-        add("eight", "8");
-        add("nine", "9");
-        add("ten", "10");
-        add("hundred", "100");
-        add("thousand", "1000");
-        add("million", "1000000");
-        add("billion", "1000000000");
-        add("trillion", "1000000000000");
-        add("ans", "0");
+        constant("pi", "3.14159265358979323846264338327950288419716939937510");
+        constant("phi", "1.61803398874989484820458683436563811772030917980576");
+        constant("e", "2.71828182845904523536028747135266249775724709369995");
+        constant("g", "9.81");
+        constant("one", "1");
+        constant("two", "2");
+        constant("three", "3");
+        constant("four", "4");
+        constant("five", "5");
+        constant("six", "6");
+        constant("seven", "7");
+        constant("eight", "8");
+        constant("nine", "9");
+        constant("ten", "10");
+        constant("hundred", "100");
+        constant("thousand", "1000");
+        constant("million", "1000000");
+        constant("billion", "1000000000");
+        constant("trillion", "1000000000000");
+    }
+
+    private static void constant(String name, String value) {
+        add(name, value);
+        constants.add(name);
     }
 
     public static void add(String name, String value) {
-        if (includes(name)) {
-            throw new RuntimeException(String.format("Variable %s already defined", name));
-        }
-        variableMap.put(name, new BigDecimal(value));
+        add(name, new BigDecimal(value));
     }
 
-    public static void add(String name, BigDecimal value) {
+    public static synchronized void add(String name, BigDecimal value) {
         if (includes(name)) {
             throw new RuntimeException(String.format("Variable %s already defined", name));
         }
-        variableMap.put(name, value);
+        put(name, value);
     }
 
     public static void set(String name, String value) {
+        set(name, new BigDecimal(value));
+    }
+
+    public static synchronized void set(String name, BigDecimal value) {
         if (!includes(name)) {
             throw new RuntimeException(String.format("Variable %s has not been defined", name));
         }
-        variableMap.replace(name, new BigDecimal(value));
+        if (isConstant(name)) {
+            throw new RuntimeException(String.format("Variable %s is a constant", name));
+        }
+        put(name, value);
     }
 
-    public static void set(String name, BigDecimal value) {
-        if (!includes(name)) {
-            throw new RuntimeException(String.format("Variable %s has not been defined", name));
+    // Defines or replaces every variable in 'variables' in one copy. Constants may only be restated unchanged.
+    public static synchronized void putAll(Map<String, BigDecimal> variables) {
+        Map<String, BigDecimal> copy = new HashMap<>(variableMap);
+        BigDecimal[] values = valueSlots.clone();
+        for (Map.Entry<String, BigDecimal> entry : variables.entrySet()) {
+            String name = entry.getKey();
+            if (isConstant(name)) {
+                if (variableMap.get(name).compareTo(entry.getValue()) == 0) continue;
+                throw new RuntimeException(String.format("Variable %s is a constant", name));
+            }
+            copy.put(name, entry.getValue());
+            int slot = Slots.variable(name);
+            if (slot >= values.length) values = Slots.grow(values, slot);
+            values[slot] = entry.getValue();
         }
-        variableMap.replace(name, value);
+
+        valueSlots = values;
+        variableMap = copy;
+    }
+
+    private static void put(String name, BigDecimal value) {
+        Map<String, BigDecimal> copy = new HashMap<>(variableMap);
+        copy.put(name, value);
+
+        int slot = Slots.variable(name);
+        BigDecimal[] values = slot < valueSlots.length ? valueSlots.clone() : Slots.grow(valueSlots, slot);
+        values[slot] = value;
+
+        valueSlots = values;
+        variableMap = copy;
     }
 
     public static boolean includes(String name) {
         return variableMap.containsKey(name);
     }
 
+    // Constants never change, so the optimizer may inline them.
+    public static boolean isConstant(String name) {
+        return constants.contains(name);
+    }
+
     public static BigDecimal get(String name) {
         return variableMap.get(name);
     }
 
+    public static BigDecimal valueAt(int slot) {
+        BigDecimal[] values = valueSlots;
+        return slot < values.length ? values[slot] : null;
+    }
+
+    // Every constant at the precision of 'mc', indexed by Slots.variable; other slots are null.
+    // Shared while it stays cached, so callers must not modify the array. Computed outside the lock, as
+    // Combinatorics does, so a slow high precision doesn't hold up lookups at others.
+    public static BigDecimal[] constantsAt(MathContext mc) {
+        synchronized (constantsByContext) {
+            BigDecimal[] cached = constantsByContext.get(mc);
+            if (cached != null) return cached;
+        }
+        BigDecimal[] values = computeConstants(mc);
+        synchronized (constantsByContext) {
+            constantsByContext.put(mc, values);
+        }
+        return values;
+    }
+
+    private static BigDecimal[] computeConstants(MathContext mc) {
+        BigDecimal[] values = new BigDecimal[0];
+        for (String name : constants) {
+            int slot = Slots.variable(name);
+            if (slot >= values.length) values = Slots.grow(values, slot);
+            Function<MathContext, BigDecimal> compute = computed.get(name);
+            values[slot] = compute != null ? compute.apply(mc) : variableMap.get(name).round(mc);
+        }
+        return values;
+    }
+
+    // (1 + sqrt 5) / 2, with a few guard digits so only the final division rounds.
+    private static BigDecimal phi(MathContext mc) {
+        MathContext working = new MathContext(mc.getPrecision() + 5);
+        return BigDecimal.ONE.add(BigMath.sqrt(BigDecimal.valueOf(5), working)).divide(BigDecimal.TWO, mc);
+    }
+
     public static Map<String, BigDecimal> getVariableMap() {
-        return variableMap;
+        return Collections.unmodifiableMap(variableMap);
     }
 }
\ No newline at end of file
@@ -4,24 +4,31 @@ import Exceptions.LexerException;
 import lexer.Token.TokenType;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 
 import static lexer.Token.*;
 import static lexer.Token.OperatorToken.isOperator;
 import static lexer.Token.ParenthesisToken.isParenthesis;
 import static lexer.Token.PrefixToken.isPrefix;
 import static lexer.Token.SuffixToken.isSuffix;
+import static lexer.TokenBuffer.*;
 
 public class Lexer {
     public static TokenType[] tokenize(String input) {
-        final int inputLength = input.length();
         if (input.trim().isEmpty()) return new NumberToken[]{new NumberToken(BigDecimal.ZERO)};
-        int i = 0;
+        TokenBuffer buffer = new TokenBuffer();
+        tokenize(input, buffer);
+        return buffer.toArray();
+    }
 
-        final ArrayList<TokenType> tokens = new ArrayList<>(inputLength);
+    // Fills 'buffer' in place; once the buffer has grown to fit, this allocates nothing.
+    public static TokenBuffer tokenize(String input, TokenBuffer buffer) {
+        buffer.reset(input);
+        final char[] source = buffer.source;
+        final int inputLength = buffer.sourceLength;
+        int i = 0;
 
         while (i < inputLength) {
-            char c = input.charAt(i);
+            char c = source[i];
 
             if (Character.isWhitespace(c)) {
                 i++;
@@ -33,7 +40,7 @@ public class Lexer {
                 boolean dot = false;
 
                 while (i < inputLength) {
-                    c = input.charAt(i);
+                    c = source[i];
 
                     if (Character.isDigit(c)) {
                         i++;
@@ -44,93 +51,78 @@ public class Lexer {
                     } else break;
                 }
 
-                String number = input.substring(start, i);
-                if (number.equals(".")) throw new LexerException("A single dot is not a valid number.");
+                if (i - start == 1 && source[start] == '.') throw new LexerException("A single dot is not a valid number.");
 
-                tokens.add(numberToken(number));
+                buffer.add(NUMBER, start, i);
                 continue;
             }
 
-            if (isPrefixChar(c, tokens)) {
-                tokens.add(prefixToken(c));
-                i++;
+            if (isPrefixChar(c, buffer)) {
+                buffer.add(PREFIX, i, ++i);
                 continue;
             }
 
-            if (isSuffixChar(c, tokens) && (i + 1 >= inputLength || !Character.isLetterOrDigit(input.charAt(i + 1)))) {
-                tokens.add(suffixToken(c));
-                i++;
+            if (isSuffixChar(c, buffer) && (i + 1 >= inputLength || !Character.isLetterOrDigit(source[i + 1]))) {
+                buffer.add(SUFFIX, i, ++i);
                 continue;
             }
 
             if (isOperator(c)) {
-                tokens.add(operatorToken(c));
-                i++;
+                buffer.add(OPERATOR, i, ++i);
                 continue;
             }
 
             if (isParenthesis(c)) {
-                tokens.add(parenthesisToken(c));
-                i++;
+                buffer.add(PARENTHESIS, i, ++i);
                 continue;
             }
 
             if (Character.isLetter(c)) {
                 final int start = i++;
                 while (i < inputLength) {
-                    c = input.charAt(i);
+                    c = source[i];
                     if (!Character.isLetterOrDigit(c) && c != '_') break;
                     i++;
                 }
-                tokens.add(identifierToken(input.substring(start, i)));
+                buffer.add(IDENTIFIER, start, i);
                 continue;
             }
 
             if (c == ',') {
-                tokens.add(CommaToken.COMMA_TOKEN);
-                i++;
+                buffer.add(COMMA, i, ++i);
                 continue;
             }
 
             if (c == ';') {
-                tokens.add(SemiColonToken.SEMI_COLON_TOKEN);
-                i++;
+                buffer.add(SEMI_COLON, i, ++i);
                 continue;
             }
 
             throw new LexerException("Invalid char: " + c);
         }
 
-        tokens.add(EndToken.END_TOKEN);
-        return tokens.toArray(TokenType[]::new);
+        if (buffer.size() == 0) buffer.add(NUMBER, inputLength, inputLength);
+        buffer.add(END, inputLength, inputLength);
+        return buffer;
     }
 
-    private static boolean isPrefixChar(char c, ArrayList<TokenType> tokenList) {
+    private static boolean isPrefixChar(char c, TokenBuffer buffer) {
         if (!isPrefix(c)) return false;
-        if (tokenList.isEmpty()) return true;
 
-        TokenType last = tokenList.getLast();
-
-        return switch (last) {
-            case PrefixToken ignored -> true;
-            case OperatorToken ignored -> true;
-            case CommaToken ignored -> true;
-            case ParenthesisToken p when p == ParenthesisToken.OPEN -> true;
+        return switch (buffer.lastKind()) {
+            case -1, PREFIX, OPERATOR, COMMA -> true;
+            case PARENTHESIS -> buffer.lastSymbol() == '(';
             default -> false;
         };
     }
 
-    private static boolean isSuffixChar(char c, ArrayList<TokenType> tokenList) {
+    private static boolean isSuffixChar(char c, TokenBuffer buffer) {
         if (!isSuffix(c)) return false;
-        if (tokenList.isEmpty()) return false;
-
-        TokenType last = tokenList.getLast();
 
-        return switch (last) {
-            case NumberToken ignored -> true;
-            case IdentifierToken ignored -> true;
-            case ParenthesisToken p when p == ParenthesisToken.CLOSE -> true;
+        return switch (buffer.lastKind()) {
+            case NUMBER, IDENTIFIER -> true;
+            case PARENTHESIS -> buffer.lastSymbol() == ')';
             default -> false;
         };
     }
-}
\ No newline at end of file
+}
@@ -2,7 +2,6 @@ package lexer;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class Token {
@@ -208,29 +207,27 @@ public class Token {
         }
     }
 
-    private static final int NUMBER_POOL_MAX_CACHE = 5000;
-    private static final int IDENTIFIER_POOL_MAX_CACHE = 50;
+    // Capacities can be tuned with -Dcalc.numberPool.capacity and -Dcalc.identifierPool.capacity.
+    private static final int NUMBER_POOL_CAPACITY = Integer.getInteger("calc.numberPool.capacity", 5000);
+    private static final int IDENTIFIER_POOL_CAPACITY = Integer.getInteger("calc.identifierPool.capacity", 1024);
 
-    private final static Map<BigDecimal, NumberToken> numberPool = new LinkedHashMap<>(NUMBER_POOL_MAX_CACHE + 1, 1, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<BigDecimal, NumberToken> eldest) {
-            return size() > NUMBER_POOL_MAX_CACHE;
-        }
-    };
-
-    private final static Map<String, IdentifierToken> identifierPool = new LinkedHashMap<>(IDENTIFIER_POOL_MAX_CACHE  + 1, 1, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, IdentifierToken> eldest) {
-            return size() > IDENTIFIER_POOL_MAX_CACHE ;
-        }
-    };
+    private static final TokenPool<BigDecimal, NumberToken> numberPool = new TokenPool<>(NUMBER_POOL_CAPACITY);
+    private static final TokenPool<String, IdentifierToken> identifierPool = new TokenPool<>(IDENTIFIER_POOL_CAPACITY);
 
     public static NumberToken numberToken(String value) {
-        return numberPool.computeIfAbsent(new BigDecimal(value).stripTrailingZeros(), NumberToken::new);
+        return numberPool.get(new BigDecimal(value).stripTrailingZeros(), NumberToken::new);
     }
 
     public static IdentifierToken identifierToken(String id) {
-        return identifierPool.computeIfAbsent(id.intern(), IdentifierToken::new);
+        return identifierPool.get(id, IdentifierToken::new);
+    }
+
+    public static TokenPool<BigDecimal, NumberToken> getNumberPool() {
+        return numberPool;
+    }
+
+    public static TokenPool<String, IdentifierToken> getIdentifierPool() {
+        return identifierPool;
     }
 
     public static OperatorToken operatorToken(char c) {
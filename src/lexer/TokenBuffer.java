@@ -0,0 +1,111 @@
+package lexer;
+
+import Exceptions.LexerException;
+import lexer.Token.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+// Reusable, primitive-packed lexer output: a kind per token plus its [start, end) range in the source.
+// Number and identifier values are only built when token(i) asks for them.
+public class TokenBuffer {
+    public static final int NUMBER = 0;
+    public static final int IDENTIFIER = 1;
+    public static final int OPERATOR = 2;
+    public static final int PREFIX = 3;
+    public static final int SUFFIX = 4;
+    public static final int PARENTHESIS = 5;
+    public static final int COMMA = 6;
+    public static final int SEMI_COLON = 7;
+    public static final int END = 8;
+
+    private static final int INITIAL_CAPACITY = 64;
+    // Largest expression accepted, in tokens; -Dcalc.lexer.maxTokens.
+    private static final int MAX_TOKENS = Integer.getInteger("calc.lexer.maxTokens", 2_000_000);
+
+    char[] source = new char[INITIAL_CAPACITY];
+    int sourceLength = 0;
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void reset(String input) {
+        sourceLength = input.length();
+        if (source.length < sourceLength) source = new char[Math.max(sourceLength, source.length * 2)];
+        input.getChars(0, sourceLength, source, 0);
+        size = 0;
+    }
+
+    void add(int kind, int start, int end) {
+        if (size >= MAX_TOKENS) {
+            throw new LexerException("Expression too long (limit " + MAX_TOKENS + " tokens)");
+        }
+        if (size == kinds.length) {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    int lastKind() {
+        return size == 0 ? -1 : kinds[size - 1];
+    }
+
+    char lastSymbol() {
+        return source[starts[size - 1]];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int kind(int i) {
+        return kinds[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public String text(int i) {
+        return new String(source, starts[i], ends[i] - starts[i]);
+    }
+
+    public BigDecimal number(int i) {
+        if (starts[i] == ends[i]) return BigDecimal.ZERO;
+        return new BigDecimal(source, starts[i], ends[i] - starts[i]).stripTrailingZeros();
+    }
+
+    public TokenType token(int i) {
+        return switch (kinds[i]) {
+            case NUMBER -> new NumberToken(number(i));
+            case IDENTIFIER -> Token.identifierToken(text(i));
+            case OPERATOR -> OperatorToken.fromSymbol(source[starts[i]]);
+            case PREFIX -> PrefixToken.fromSymbol(source[starts[i]]);
+            case SUFFIX -> SuffixToken.fromSymbol(source[starts[i]]);
+            case PARENTHESIS -> ParenthesisToken.fromSymbol(source[starts[i]]);
+            case COMMA -> CommaToken.COMMA_TOKEN;
+            case SEMI_COLON -> SemiColonToken.SEMI_COLON_TOKEN;
+            default -> EndToken.END_TOKEN;
+        };
+    }
+
+    // The pooled TokenType[] form that Lexer.tokenize(String) has always returned.
+    TokenType[] toArray() {
+        TokenType[] tokens = new TokenType[size];
+        for (int i = 0; i < size; i++) {
+            tokens[i] = kinds[i] == NUMBER ? Token.numberToken(text(i)) : token(i);
+        }
+        return tokens;
+    }
+}
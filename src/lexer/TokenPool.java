@@ -0,0 +1,137 @@
+package lexer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Bounded interning cache safe for concurrent lexing. Hits are lock-free reads that set a reference bit;
+// misses lock only one stripe, which evicts with the CLOCK (second-chance) policy over its own ring.
+public class TokenPool<K, V> {
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private volatile boolean referenced;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Stripe<K, V> {
+        private final Node<K, V>[] ring;
+        private int size = 0;
+        private int hand = 0;
+
+        @SuppressWarnings("unchecked")
+        private Stripe(int capacity) {
+            this.ring = (Node<K, V>[]) new Node<?, ?>[capacity];
+        }
+    }
+
+    private static final int DEFAULT_STRIPES = 16;
+
+    private final int capacity;
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+    private final Stripe<K, V>[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenPool(int capacity) {
+        this(capacity, DEFAULT_STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    public TokenPool(int capacity, int stripeCount) {
+        if (capacity <= 0 || stripeCount <= 0) throw new IllegalArgumentException("Pool capacity and stripes must be positive");
+        stripeCount = Integer.highestOneBit(Math.min(stripeCount, capacity));
+        this.capacity = capacity;
+        this.map = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            // Spread the remainder so the stripes add up to exactly 'capacity'.
+            stripes[i] = new Stripe<>(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    public V get(K key, Function<? super K, ? extends V> factory) {
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            if (!node.referenced) node.referenced = true;
+            hits.increment();
+            return node.value;
+        }
+
+        misses.increment();
+        V value = factory.apply(key);
+        Stripe<K, V> stripe = stripes[stripeIndex(key)];
+        synchronized (stripe) {
+            node = map.get(key);
+            if (node != null) return node.value;
+            node = new Node<>(key, value);
+            insert(stripe, node);
+            map.put(key, node);
+        }
+        return value;
+    }
+
+    private void insert(Stripe<K, V> stripe, Node<K, V> node) {
+        Node<K, V>[] ring = stripe.ring;
+        if (stripe.size < ring.length) {
+            ring[stripe.size++] = node;
+            return;
+        }
+
+        while (true) {
+            Node<K, V> candidate = ring[stripe.hand];
+            if (candidate.referenced) {
+                candidate.referenced = false;
+                stripe.hand = (stripe.hand + 1) % ring.length;
+                continue;
+            }
+            map.remove(candidate.key, candidate);
+            evictions.increment();
+            ring[stripe.hand] = node;
+            stripe.hand = (stripe.hand + 1) % ring.length;
+            return;
+        }
+    }
+
+    private int stripeIndex(K key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TokenPool[size=%d/%d, hits=%d, misses=%d, evictions=%d, hitRate=%.3f]",
+                size(), capacity, hits(), misses(), evictions(), hitRate());
+    }
+}
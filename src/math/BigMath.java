@@ -0,0 +1,305 @@
+package math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+// Transcendental functions on BigDecimal, correct to the requested MathContext (barring the last digit).
+// Each works at a few guard digits above the request and rounds once at the end.
+// A caller with a time limit sets a Deadline for the thread, which the series loops and the pi computation poll:
+// a large argument can make one call run long, sin(10^100000) alone needing 100000 digits of pi.
+public class BigMath {
+    @FunctionalInterface
+    public interface Deadline {
+        // Throws once the time is up.
+        void check();
+    }
+
+    private static final ThreadLocal<Deadline> deadline = new ThreadLocal<>();
+
+    private static final int GUARD_DIGITS = 10;
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+    private static final BigDecimal TENTH = new BigDecimal("0.1");
+    private static final BigDecimal MAX_EXP_ARGUMENT = new BigDecimal("1E9");
+    private static final double LOG2_10 = Math.log(10) / Math.log(2);
+
+    // Constants are kept at the highest precision computed so far and rounded down on request.
+    private static BigDecimal pi = BigDecimal.ZERO;
+    private static BigDecimal ln2 = BigDecimal.ZERO;
+    private static BigDecimal ln10 = BigDecimal.ZERO;
+
+    // Sets the deadline polled by this thread's calls, or clears it with null, and returns the one it replaces.
+    public static Deadline setDeadline(Deadline limit) {
+        Deadline previous = deadline.get();
+        deadline.set(limit);
+        return previous;
+    }
+
+    public static BigDecimal pi(MathContext mc) {
+        synchronized (BigMath.class) {
+            if (pi.precision() < mc.getPrecision() + GUARD_DIGITS) pi = computePi(working(mc));
+            return pi.round(mc);
+        }
+    }
+
+    public static BigDecimal ln2(MathContext mc) {
+        synchronized (BigMath.class) {
+            if (ln2.precision() < mc.getPrecision() + GUARD_DIGITS) {
+                MathContext w = working(mc);
+                ln2 = atanhSeries(BigDecimal.ONE.divide(BigDecimal.valueOf(3), w), w).multiply(TWO, w);
+            }
+            return ln2.round(mc);
+        }
+    }
+
+    public static BigDecimal ln10(MathContext mc) {
+        synchronized (BigMath.class) {
+            if (ln10.precision() < mc.getPrecision() + GUARD_DIGITS) ln10 = ln(BigDecimal.TEN, working(mc));
+            return ln10.round(mc);
+        }
+    }
+
+    public static BigDecimal sqrt(BigDecimal x, MathContext mc) {
+        checkPrecision(mc);
+        if (x.signum() < 0) throw new ArithmeticException("Square root of a negative number");
+        // BigDecimal.sqrt is a Newton iteration that doubles the working precision each step.
+        return x.sqrt(mc);
+    }
+
+    public static BigDecimal exp(BigDecimal x, MathContext mc) {
+        checkPrecision(mc);
+        if (x.signum() == 0) return BigDecimal.ONE;
+        if (x.abs().compareTo(MAX_EXP_ARGUMENT) > 0) throw new ArithmeticException("Exponent too large");
+
+        // exp(x) = exp(x / 2^k)^(2^k) with |x / 2^k| <= 1/2; every squaring costs a bit, so carry k extra digits.
+        int k = 0;
+        BigDecimal r = x;
+        while (r.abs().compareTo(HALF) > 0) {
+            r = r.multiply(HALF);
+            k++;
+        }
+
+        MathContext w = new MathContext(mc.getPrecision() + GUARD_DIGITS + k);
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        for (int n = 1; ; n++) {
+            poll();
+            term = term.multiply(r, w).divide(BigDecimal.valueOf(n), w);
+            sum = sum.add(term, w);
+            if (negligible(term, sum, w)) break;
+        }
+        for (int i = 0; i < k; i++) {
+            sum = sum.multiply(sum, w);
+        }
+        return sum.round(mc);
+    }
+
+    public static BigDecimal ln(BigDecimal x, MathContext mc) {
+        checkPrecision(mc);
+        if (x.signum() <= 0) throw new ArithmeticException("Logarithm of a non-positive number");
+        if (x.compareTo(BigDecimal.ONE) == 0) return BigDecimal.ZERO;
+
+        // ln(x) = k ln2 + ln(m) with m = x / 2^k close to 1, then ln(m) = 2 atanh((m - 1) / (m + 1)).
+        MathContext w = working(mc);
+        long k = Math.round(log2Estimate(x));
+        if (Math.abs(k) > Integer.MAX_VALUE / 2) throw new ArithmeticException("Logarithm argument out of range");
+        BigDecimal m = k >= 0
+                ? x.divide(TWO.pow((int) k), w)
+                : x.multiply(TWO.pow((int) -k), w);
+
+        BigDecimal z = m.subtract(BigDecimal.ONE).divide(m.add(BigDecimal.ONE), w);
+        BigDecimal result = atanhSeries(z, w).multiply(TWO, w);
+        if (k != 0) result = result.add(ln2(w).multiply(BigDecimal.valueOf(k), w), w);
+        return result.round(mc);
+    }
+
+    public static BigDecimal log10(BigDecimal x, MathContext mc) {
+        MathContext w = working(mc);
+        return ln(x, w).divide(ln10(w), mc);
+    }
+
+    public static BigDecimal sin(BigDecimal x, MathContext mc) {
+        return sinCos(x, mc)[0].round(mc);
+    }
+
+    public static BigDecimal cos(BigDecimal x, MathContext mc) {
+        return sinCos(x, mc)[1].round(mc);
+    }
+
+    public static BigDecimal tan(BigDecimal x, MathContext mc) {
+        BigDecimal[] sinCos = sinCos(x, mc);
+        MathContext w = working(mc);
+        if (sinCos[1].signum() == 0) throw new ArithmeticException("Tangent is undefined");
+        return sinCos[0].divide(sinCos[1], w).round(mc);
+    }
+
+    public static BigDecimal atan(BigDecimal x, MathContext mc) {
+        checkPrecision(mc);
+        if (x.signum() == 0) return BigDecimal.ZERO;
+        MathContext w = working(mc);
+
+        // atan(x) = ±pi/2 - atan(1/x) for |x| > 1.
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            BigDecimal halfPi = pi(w).multiply(HALF);
+            BigDecimal inverse = atan(BigDecimal.ONE.divide(x, w), w);
+            return (x.signum() > 0 ? halfPi.subtract(inverse, w) : halfPi.negate().subtract(inverse, w)).round(mc);
+        }
+
+        // Halve the angle with atan(x) = 2 atan(x / (1 + sqrt(1 + x^2))) until the series converges quickly.
+        int doublings = 0;
+        BigDecimal r = x;
+        while (r.abs().compareTo(TENTH) > 0) {
+            poll();
+            r = r.divide(BigDecimal.ONE.add(BigDecimal.ONE.add(r.multiply(r, w), w).sqrt(w), w), w);
+            doublings++;
+        }
+
+        BigDecimal r2 = r.multiply(r, w);
+        BigDecimal power = r;
+        BigDecimal sum = r;
+        for (int n = 1; ; n++) {
+            poll();
+            power = power.multiply(r2, w).negate();
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * n + 1), w);
+            sum = sum.add(term, w);
+            if (negligible(term, sum, w)) break;
+        }
+        return sum.multiply(TWO.pow(doublings), w).round(mc);
+    }
+
+    public static BigDecimal pow(BigDecimal x, BigDecimal y, MathContext mc) {
+        checkPrecision(mc);
+        if (y.signum() == 0) return BigDecimal.ONE;
+        if (isIntegral(y) && y.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            return x.pow(y.intValueExact(), mc);
+        }
+        if (y.compareTo(HALF) == 0) return sqrt(x, mc);
+        if (x.signum() == 0) {
+            if (y.signum() > 0) return BigDecimal.ZERO;
+            throw new ArithmeticException("Zero raised to a negative power");
+        }
+        if (x.signum() < 0) throw new ArithmeticException("Negative base with a fractional exponent");
+
+        // exp amplifies the absolute error of y ln(x), so carry as many extra digits as its integer part has.
+        MathContext w = new MathContext(mc.getPrecision() + GUARD_DIGITS + Math.max(0, y.precision() - y.scale()) + 5);
+        BigDecimal exponent = y.multiply(ln(x, w), w);
+        return exp(exponent, w).round(mc);
+    }
+
+    public static boolean isIntegral(BigDecimal value) {
+        return value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0;
+    }
+
+    private static BigDecimal[] sinCos(BigDecimal x, MathContext mc) {
+        checkPrecision(mc);
+        int integerDigits = Math.max(0, x.precision() - x.scale());
+        MathContext w = new MathContext(mc.getPrecision() + GUARD_DIGITS + integerDigits);
+
+        // Reduce to |r| <= pi/4 around the nearest multiple q of pi/2, then pick the quadrant.
+        BigDecimal halfPi = pi(w).multiply(HALF);
+        BigDecimal q = x.divide(halfPi, 0, RoundingMode.HALF_EVEN);
+        BigDecimal r = x.subtract(q.multiply(halfPi, w), w);
+
+        // r is now accurate to the guard digits, and the series needs no more than that.
+        w = working(mc);
+        BigDecimal r2 = r.multiply(r, w);
+        BigDecimal sin = r;
+        BigDecimal term = r;
+        for (int n = 1; r.signum() != 0; n++) {
+            poll();
+            term = term.multiply(r2, w).divide(BigDecimal.valueOf((2L * n) * (2L * n + 1)), w).negate();
+            sin = sin.add(term, w);
+            if (negligible(term, sin, w)) break;
+        }
+
+        BigDecimal cos = BigDecimal.ONE;
+        term = BigDecimal.ONE;
+        for (int n = 1; r.signum() != 0; n++) {
+            poll();
+            term = term.multiply(r2, w).divide(BigDecimal.valueOf((2L * n - 1) * (2L * n)), w).negate();
+            cos = cos.add(term, w);
+            if (negligible(term, cos, w)) break;
+        }
+
+        return switch (q.toBigInteger().mod(BigInteger.valueOf(4)).intValue()) {
+            case 0 -> new BigDecimal[]{sin, cos};
+            case 1 -> new BigDecimal[]{cos, sin.negate()};
+            case 2 -> new BigDecimal[]{sin.negate(), cos.negate()};
+            default -> new BigDecimal[]{cos.negate(), sin};
+        };
+    }
+
+    // Chudnovsky series (about 14 digits per term), summed exactly on BigInteger by binary splitting.
+    private static BigDecimal computePi(MathContext w) {
+        int terms = w.getPrecision() / 14 + 2;
+        BigInteger[] pqt = chudnovsky(0, terms);
+        BigDecimal numerator = new BigDecimal(pqt[1]).multiply(BigDecimal.valueOf(426880))
+                .multiply(BigDecimal.valueOf(10005).sqrt(w), w);
+        return numerator.divide(new BigDecimal(pqt[2]), w);
+    }
+
+    private static final BigInteger CHUDNOVSKY_C3_OVER_24 = BigInteger.valueOf(10939058860032000L);
+
+    private static BigInteger[] chudnovsky(int a, int b) {
+        poll();
+        if (b - a == 1) {
+            if (a == 0) return new BigInteger[]{BigInteger.ONE, BigInteger.ONE, BigInteger.valueOf(13591409)};
+            BigInteger k = BigInteger.valueOf(a);
+            BigInteger p = BigInteger.valueOf(6L * a - 5).multiply(BigInteger.valueOf(2L * a - 1)).multiply(BigInteger.valueOf(6L * a - 1));
+            BigInteger q = k.multiply(k).multiply(k).multiply(CHUDNOVSKY_C3_OVER_24);
+            BigInteger t = p.multiply(BigInteger.valueOf(13591409).add(BigInteger.valueOf(545140134).multiply(k)));
+            return new BigInteger[]{p, q, (a & 1) == 1 ? t.negate() : t};
+        }
+
+        int m = (a + b) >>> 1;
+        BigInteger[] left = chudnovsky(a, m);
+        BigInteger[] right = chudnovsky(m, b);
+        return new BigInteger[]{
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                left[2].multiply(right[1]).add(left[0].multiply(right[2]))
+        };
+    }
+
+    // atanh(z) = z + z^3/3 + z^5/5 + ...
+    private static BigDecimal atanhSeries(BigDecimal z, MathContext w) {
+        if (z.signum() == 0) return BigDecimal.ZERO;
+        BigDecimal z2 = z.multiply(z, w);
+        BigDecimal power = z;
+        BigDecimal sum = z;
+        for (int k = 1; ; k++) {
+            poll();
+            power = power.multiply(z2, w);
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * k + 1), w);
+            sum = sum.add(term, w);
+            if (negligible(term, sum, w)) return sum;
+        }
+    }
+
+    private static void poll() {
+        Deadline limit = deadline.get();
+        if (limit != null) limit.check();
+    }
+
+    private static double log2Estimate(BigDecimal x) {
+        BigInteger unscaled = x.unscaledValue();
+        int shift = Math.max(0, unscaled.bitLength() - 62);
+        double top = unscaled.shiftRight(shift).doubleValue();
+        return Math.log(top) / Math.log(2) + shift - x.scale() * LOG2_10;
+    }
+
+    private static boolean negligible(BigDecimal term, BigDecimal sum, MathContext w) {
+        return term.signum() == 0 || term.abs().compareTo(sum.abs().scaleByPowerOfTen(-w.getPrecision())) < 0;
+    }
+
+    private static MathContext working(MathContext mc) {
+        checkPrecision(mc);
+        return new MathContext(mc.getPrecision() + GUARD_DIGITS, mc.getRoundingMode());
+    }
+
+    private static void checkPrecision(MathContext mc) {
+        if (mc.getPrecision() == 0) throw new ArithmeticException("Unlimited precision is not supported");
+    }
+}
@@ -0,0 +1,269 @@
+package math;
+
+import Exceptions.EvaluatorException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+// Exact factorials, binomials and permutations on BigInteger.
+// n! uses Luschny's prime-swing recursion, n! = (n/2)!^2 * swing(n) * 2^k, where swing(n) is built from its
+// prime factorisation, and every product is a balanced binary split so the multiplications stay similar in size.
+// nCr reads its prime factorisation straight off Kummer's theorem and never forms a factorial.
+// Large products are split across the common ForkJoinPool.
+public class Combinatorics {
+    // Tune with -Dcalc.factorial.limit (largest n accepted by n!, nCr and nPr) and -Dcalc.factorial.cacheSize.
+    private static final int FACTORIAL_LIMIT = Integer.getInteger("calc.factorial.limit", 100_000);
+    private static final int CACHE_CAPACITY = Integer.getInteger("calc.factorial.cacheSize", 32);
+    private static final int PARALLEL_THRESHOLD = 20_000;
+    private static final int SEQUENTIAL_FACTORS = 256;
+    private static final int LEAF_FACTORS = 16;
+
+    private static final long[] SMALL_FACTORIALS = new long[21];
+    private static final double[] DOUBLE_FACTORIALS = new double[171];
+    static {
+        SMALL_FACTORIALS[0] = 1;
+        for (int i = 1; i < SMALL_FACTORIALS.length; i++) SMALL_FACTORIALS[i] = SMALL_FACTORIALS[i - 1] * i;
+        DOUBLE_FACTORIALS[0] = 1;
+        for (int i = 1; i < DOUBLE_FACTORIALS.length; i++) DOUBLE_FACTORIALS[i] = DOUBLE_FACTORIALS[i - 1] * i;
+    }
+
+    private static final Map<Integer, BigInteger> cache = new LinkedHashMap<>(CACHE_CAPACITY + 1, 1, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BigInteger> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    public static int factorialLimit() {
+        return FACTORIAL_LIMIT;
+    }
+
+    public static BigDecimal factorial(BigDecimal value) {
+        if (value.signum() < 0 || value.stripTrailingZeros().scale() > 0) {
+            throw new ArithmeticException("Factorial only works for positive integers rn");
+        }
+        if (value.compareTo(BigDecimal.valueOf(FACTORIAL_LIMIT)) > 0) {
+            throw new EvaluatorException("Factorial too large");
+        }
+        return new BigDecimal(factorial(value.intValueExact()));
+    }
+
+    public static double factorial(double value) {
+        if (value < 0 || value != Math.rint(value)) {
+            throw new ArithmeticException("Factorial only works for positive integers rn");
+        }
+        if (value > FACTORIAL_LIMIT) {
+            throw new EvaluatorException("Factorial too large");
+        }
+        return value < DOUBLE_FACTORIALS.length ? DOUBLE_FACTORIALS[(int) value] : Double.POSITIVE_INFINITY;
+    }
+
+    public static BigInteger factorial(int n) {
+        if (n < SMALL_FACTORIALS.length) return BigInteger.valueOf(SMALL_FACTORIALS[n]);
+
+        synchronized (cache) {
+            BigInteger cached = cache.get(n);
+            if (cached != null) return cached;
+        }
+
+        // Computed outside the lock; two threads racing on the same n both do the work once.
+        int[] primes = primes(n);
+        boolean parallel = n >= PARALLEL_THRESHOLD;
+        BigInteger result = oddFactorial(n, primes, parallel).shiftLeft(n - Integer.bitCount(n));
+
+        synchronized (cache) {
+            cache.put(n, result);
+        }
+        return result;
+    }
+
+    public static BigDecimal binomial(BigDecimal n, BigDecimal k) {
+        long total = argument(n, "nCr");
+        long chosen = argument(k, "nCr");
+        if (chosen > total) return BigDecimal.ZERO;
+        chosen = Math.min(chosen, total - chosen);
+
+        if (total <= FACTORIAL_LIMIT) return new BigDecimal(binomial((int) total, (int) chosen));
+        if (chosen > FACTORIAL_LIMIT) throw new EvaluatorException("nCr too large");
+        return new BigDecimal(rangeProduct(total - chosen + 1, total).divide(factorial((int) chosen)));
+    }
+
+    public static double binomial(double n, double k) {
+        checkArgument(n, "nCr");
+        checkArgument(k, "nCr");
+        if (k > n) return 0;
+        k = Math.min(k, n - k);
+
+        double result = 1;
+        for (int i = 1; i <= k && Double.isFinite(result); i++) {
+            result = result * (n - k + i) / i;
+        }
+        return Math.rint(result);
+    }
+
+    public static BigDecimal permutations(BigDecimal n, BigDecimal k) {
+        long total = argument(n, "nPr");
+        long chosen = argument(k, "nPr");
+        if (chosen > total) return BigDecimal.ZERO;
+        if (chosen > FACTORIAL_LIMIT) throw new EvaluatorException("nPr too large");
+        return new BigDecimal(rangeProduct(total - chosen + 1, total));
+    }
+
+    public static double permutations(double n, double k) {
+        checkArgument(n, "nPr");
+        checkArgument(k, "nPr");
+        if (k > n) return 0;
+        // k distinct factors of at least 1 multiply to at least k!, which no double holds from 171! on.
+        if (k >= DOUBLE_FACTORIALS.length) return Double.POSITIVE_INFINITY;
+
+        double result = 1;
+        for (double i = n - k + 1; i <= n && Double.isFinite(result); i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    private static long argument(BigDecimal value, String name) {
+        if (value.signum() < 0 || value.stripTrailingZeros().scale() > 0) {
+            throw new ArithmeticException(name + " only works for non-negative integers");
+        }
+        if (value.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+            throw new EvaluatorException(name + " too large");
+        }
+        return value.longValueExact();
+    }
+
+    private static void checkArgument(double value, String name) {
+        if (value < 0 || value != Math.rint(value)) {
+            throw new ArithmeticException(name + " only works for non-negative integers");
+        }
+    }
+
+    // The odd part of n!, which is the odd part of (n/2)! squared times the odd part of swing(n).
+    private static BigInteger oddFactorial(int n, int[] primes, boolean parallel) {
+        if (n < 2) return BigInteger.ONE;
+        BigInteger half = oddFactorial(n / 2, primes, parallel);
+        return multiply(multiply(half, half, parallel), oddSwing(n, primes, parallel), parallel);
+    }
+
+    // swing(n) = n! / (n/2)!^2. A prime p appears in it with exponent sum(floor(n / p^i) mod 2), so p^e <= n.
+    private static BigInteger oddSwing(int n, int[] primes, boolean parallel) {
+        List<Long> factors = new ArrayList<>();
+        for (int i = 1; i < primes.length && primes[i] <= n; i++) {
+            int p = primes[i];
+            long power = 1;
+            for (int q = n / p; q > 0; q /= p) {
+                if ((q & 1) == 1) power *= p;
+            }
+            if (power > 1) factors.add(power);
+        }
+        return product(factors, parallel);
+    }
+
+    // Kummer: the exponent of p in C(n, k) is the number of borrows when subtracting k from n in base p.
+    private static BigInteger binomial(int n, int k) {
+        if (k == 0) return BigInteger.ONE;
+        int[] primes = primes(n);
+        List<Long> factors = new ArrayList<>();
+        for (int p : primes) {
+            if (p > n) break;
+            long power = 1;
+            long a = n, b = k, c = n - k;
+            while (a > 0) {
+                long exponent = a / p - b / p - c / p;
+                if (exponent > 0) power *= p;
+                a /= p;
+                b /= p;
+                c /= p;
+            }
+            if (power > 1) factors.add(power);
+        }
+        return product(factors, n >= PARALLEL_THRESHOLD);
+    }
+
+    private static BigInteger product(List<Long> factors, boolean parallel) {
+        long[] values = new long[factors.size()];
+        for (int i = 0; i < values.length; i++) values[i] = factors.get(i);
+        if (parallel && values.length > SEQUENTIAL_FACTORS) return new Product(values, 0, values.length).invoke();
+        return product(values, 0, values.length);
+    }
+
+    private static BigInteger product(long[] values, int from, int to) {
+        if (to - from <= LEAF_FACTORS) {
+            BigInteger result = BigInteger.ONE;
+            long pending = 1;
+            for (int i = from; i < to; i++) {
+                if (pending > Long.MAX_VALUE / values[i]) {
+                    result = result.multiply(BigInteger.valueOf(pending));
+                    pending = 1;
+                }
+                pending *= values[i];
+            }
+            return result.multiply(BigInteger.valueOf(pending));
+        }
+        int mid = (from + to) >>> 1;
+        return product(values, from, mid).multiply(product(values, mid, to));
+    }
+
+    // lo * (lo + 1) * ... * hi, split the same way.
+    private static BigInteger rangeProduct(long lo, long hi) {
+        if (lo > hi) return BigInteger.ONE;
+        if (hi - lo < LEAF_FACTORS) {
+            BigInteger result = BigInteger.ONE;
+            for (long i = lo; i <= hi; i++) result = result.multiply(BigInteger.valueOf(i));
+            return result;
+        }
+        long mid = lo + (hi - lo) / 2;
+        return rangeProduct(lo, mid).multiply(rangeProduct(mid + 1, hi));
+    }
+
+    private static BigInteger multiply(BigInteger a, BigInteger b, boolean parallel) {
+        return parallel ? a.parallelMultiply(b) : a.multiply(b);
+    }
+
+    // All primes <= n, ascending, from a sieve over the odd numbers.
+    private static int[] primes(int n) {
+        if (n < 2) return new int[0];
+        boolean[] composite = new boolean[n / 2 + 1];
+        int count = 1;
+        for (int i = 3; i <= n; i += 2) {
+            if (composite[i / 2]) continue;
+            count++;
+            for (long j = (long) i * i; j <= n; j += 2L * i) composite[(int) (j / 2)] = true;
+        }
+
+        int[] primes = new int[count];
+        primes[0] = 2;
+        for (int i = 3, next = 1; i <= n; i += 2) {
+            if (!composite[i / 2]) primes[next++] = i;
+        }
+        return primes;
+    }
+
+    private static final class Product extends RecursiveTask<BigInteger> {
+        private final long[] values;
+        private final int from;
+        private final int to;
+
+        private Product(long[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BigInteger compute() {
+            if (to - from <= SEQUENTIAL_FACTORS) return product(values, from, to);
+            int mid = (from + to) >>> 1;
+            Product left = new Product(values, from, mid);
+            left.fork();
+            BigInteger right = new Product(values, mid, to).compute();
+            return left.join().multiply(right);
+        }
+    }
+}
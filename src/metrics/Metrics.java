@@ -0,0 +1,188 @@
+package metrics;
+
+import Exceptions.EvaluatorException;
+import Exceptions.LexerException;
+import Exceptions.ParserException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters, histograms and Flight Recorder events for each calculation stage, switched on with -Dcalc.metrics=true.
+// ENABLED is a constant, so when it's false the JIT removes every guarded call site. Call sites test it once and
+// keep the measured path in a separate method, leaving the disabled path exactly as it was:
+//   if (Metrics.ENABLED) return measuredCalc(input);
+// Flight Recorder events are only committed while a recording has calculator.Stage enabled.
+public class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("calc.metrics");
+
+    public enum Stage {
+        LEX, PARSE, EVALUATE, FORMAT
+    }
+
+    private static final LongAdder calls = new LongAdder();
+    private static final LongAdder tokens = new LongAdder();
+    private static final LongAdder cacheHits = new LongAdder();
+    private static final LongAdder cacheMisses = new LongAdder();
+    private static final Map<String, LongAdder> errors = new LinkedHashMap<>();
+    private static final EnumMap<Stage, Histogram> latencies = new EnumMap<>(Stage.class);
+    private static final Histogram treeDepths = new Histogram();
+
+    static {
+        for (String type : new String[]{"LexerException", "ParserException", "EvaluatorException", "Other"}) {
+            errors.put(type, new LongAdder());
+        }
+        for (Stage stage : Stage.values()) latencies.put(stage, new Histogram());
+        if (ENABLED) register();
+    }
+
+    private static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName("calculator:type=Metrics"));
+        } catch (JMException e) {
+            // Already registered by another class loader; that instance keeps reporting.
+        }
+    }
+
+    public static StageEvent begin() {
+        StageEvent event = new StageEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    public static void end(StageEvent event, Stage stage, int length) {
+        latencies.get(stage).record(System.nanoTime() - event.startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.name();
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    public static void call() {
+        calls.increment();
+    }
+
+    public static void error(RuntimeException e) {
+        String type = switch (e) {
+            case LexerException ignored -> "LexerException";
+            case ParserException ignored -> "ParserException";
+            case EvaluatorException ignored -> "EvaluatorException";
+            default -> "Other";
+        };
+        errors.get(type).increment();
+    }
+
+    public static void parsed(int tokenCount, int treeDepth) {
+        tokens.add(tokenCount);
+        treeDepths.record(treeDepth);
+    }
+
+    public static void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public static void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public static MetricsMXBean snapshot() {
+        return new Bean();
+    }
+
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            long total = 0;
+            for (LongAdder count : errors.values()) total += count.sum();
+            return total;
+        }
+
+        @Override
+        public Map<String, Long> getErrorsByType() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            errors.forEach((type, count) -> result.put(type, count.sum()));
+            return result;
+        }
+
+        @Override
+        public long getTokens() {
+            return tokens.sum();
+        }
+
+        @Override
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+
+        @Override
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+
+        @Override
+        public Map<String, Long> getStageCounts() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            latencies.forEach((stage, histogram) -> result.put(stage.name(), histogram.count()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getStageMeanNanos() {
+            Map<String, Double> result = new LinkedHashMap<>();
+            latencies.forEach((stage, histogram) -> result.put(stage.name(), histogram.mean()));
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getStageP50Nanos() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            latencies.forEach((stage, histogram) -> result.put(stage.name(), histogram.percentile(50)));
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getStageP99Nanos() {
+            Map<String, Long> result = new LinkedHashMap<>();
+            latencies.forEach((stage, histogram) -> result.put(stage.name(), histogram.percentile(99)));
+            return result;
+        }
+
+        @Override
+        public long getTreeDepthP50() {
+            return treeDepths.percentile(50);
+        }
+
+        @Override
+        public long getTreeDepthP99() {
+            return treeDepths.percentile(99);
+        }
+
+        @Override
+        public long getMaxTreeDepth() {
+            return treeDepths.max();
+        }
+
+        @Override
+        public void reset() {
+            calls.reset();
+            tokens.reset();
+            cacheHits.reset();
+            cacheMisses.reset();
+            for (LongAdder count : errors.values()) count.reset();
+            for (Histogram histogram : latencies.values()) histogram.reset();
+            treeDepths.reset();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+import java.util.Map;
+
+// Registered as "calculator:type=Metrics" when metrics are enabled. Latencies are in nanoseconds; percentiles
+// are bucket upper bounds, accurate to a factor of two.
+public interface MetricsMXBean {
+    long getCalls();
+
+    long getErrors();
+
+    Map<String, Long> getErrorsByType();
+
+    long getTokens();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getStageMeanNanos();
+
+    Map<String, Long> getStageP50Nanos();
+
+    Map<String, Long> getStageP99Nanos();
+
+    long getTreeDepthP50();
+
+    long getTreeDepthP99();
+
+    long getMaxTreeDepth();
+
+    void reset();
+}
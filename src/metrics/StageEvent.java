@@ -0,0 +1,25 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One stage of a calculation, recorded by Flight Recorder when Metrics are enabled and a recording is running.
+@Name("calculator.Stage")
+@Label("Calculation Stage")
+@Category("Calculator")
+@Description("Lexing, parsing, evaluating or formatting one expression")
+@StackTrace(false)
+public final class StageEvent extends jdk.jfr.Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Length")
+    @Description("Characters in the expression, or in the formatted result for FORMAT")
+    int length;
+
+    // Transient fields aren't recorded; this one feeds the latency histogram.
+    transient long startNanos;
+}
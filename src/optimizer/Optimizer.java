@@ -0,0 +1,162 @@
+package optimizer;
+
+import Exceptions.BudgetExceededException;
+import Exceptions.EvaluatorException;
+import evaluator.Budget;
+import evaluator.Evaluator;
+import identifier.Variables;
+import lexer.Token.*;
+import math.BigMath;
+import parser.Node.*;
+import parser.Trees;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+import java.util.List;
+
+public class Optimizer {
+    private static final Duration FOLD_TIMEOUT = Duration.ofMillis(100);
+
+    private final List<String> bound;
+    private final boolean exact;
+
+    private Optimizer(List<String> bound, boolean exact) {
+        this.bound = bound;
+        this.exact = exact;
+    }
+
+    // The tree may be evaluated at any precision.
+    public static NodeType optimize(NodeType node) {
+        return optimize(node, List.of());
+    }
+
+    // 'bound' names (function parameters) shadow constants and are never folded.
+    public static NodeType optimize(NodeType node, List<String> bound) {
+        return new Optimizer(bound, false).fold(node);
+    }
+
+    // For a tree only ever evaluated at 'mc'. With exact arithmetic every constant subexpression folds.
+    public static NodeType optimize(NodeType node, MathContext mc) {
+        return new Optimizer(List.of(), mc.getPrecision() == 0).fold(node);
+    }
+
+    private NodeType fold(NodeType node) {
+        return Trees.rebuild(node, this::fold);
+    }
+
+    // 'children' are already folded.
+    private NodeType fold(NodeType node, List<NodeType> children) {
+        return switch (node) {
+            case NumberNode n -> n;
+            case VariableNode v -> {
+                String name = v.variable().identifier();
+                if (!bound.contains(name) && Variables.isConstant(name) && foldable(Variables.get(name))) {
+                    yield new NumberNode(Variables.get(name));
+                }
+                yield v;
+            }
+            case LocalNode l -> l;
+            case GlobalNode g -> g;
+            case BinaryOperationNode b -> foldBinary(children.get(0), children.get(1), b.operator());
+            case PrefixOperationNode p -> {
+                NodeType value = children.get(0);
+                if (p.prefix() == PrefixToken.PLUS) yield value;
+                if (value instanceof NumberNode n) yield new NumberNode(Evaluator.prefix(p.prefix(), n.value()));
+                yield new PrefixOperationNode(value, p.prefix());
+            }
+            case SuffixOperationNode s -> {
+                NodeType value = children.get(0);
+                if (value instanceof NumberNode n && foldable(n.value())) {
+                    NumberNode folded = tryFold(() -> {
+                        Budget.DEFAULT.check(s.suffix(), n.value());
+                        return Evaluator.suffix(s.suffix(), n.value());
+                    });
+                    if (folded != null) yield folded;
+                }
+                yield new SuffixOperationNode(value, s.suffix());
+            }
+            case FunctionNode f -> new FunctionNode(f.function(), children);
+            case CallNode c -> new CallNode(c.function(), c.slot(), children);
+            case NativeFunctionNode n -> {
+                // Natives are pure and can't be redefined, so constant calls fold like operators.
+                if (children.stream().allMatch(arg -> arg instanceof NumberNode number && foldable(number.value()))) {
+                    BigDecimal[] values = children.stream().map(arg -> ((NumberNode) arg).value()).toArray(BigDecimal[]::new);
+                    NumberNode folded = tryFold(() -> {
+                        Budget.DEFAULT.check(n.target(), values, Evaluator.MATH_CONTEXT);
+                        return n.target().apply(values, Evaluator.MATH_CONTEXT);
+                    });
+                    if (folded != null) yield folded;
+                }
+                yield new NativeFunctionNode(n.function(), n.target(), children);
+            }
+        };
+    }
+
+    private NodeType foldBinary(NodeType left, NodeType right, OperatorToken operator) {
+        // Rounded division depends on the context's MathContext in every digit past the first few.
+        if (left instanceof NumberNode l && right instanceof NumberNode r && (exact || operator != OperatorToken.DIV)
+                && foldable(l.value()) && foldable(r.value())) {
+            NumberNode folded = tryFold(() -> {
+                Budget.DEFAULT.check(operator, l.value(), r.value());
+                return Evaluator.binary(operator, l.value(), r.value());
+            });
+            if (folded != null) return folded;
+        }
+
+        // Only identities that can never change the value of the result.
+        switch (operator) {
+            case ADD -> {
+                if (isLiteral(right, 0)) return left;
+                if (isLiteral(left, 0)) return right;
+            }
+            case SUB -> {
+                if (isLiteral(right, 0)) return left;
+            }
+            case MUL -> {
+                if (isLiteral(right, 1)) return left;
+                if (isLiteral(left, 1)) return right;
+            }
+            case POW -> {
+                if (isLiteral(right, 1)) return left;
+            }
+            default -> { }
+        }
+        return new BinaryOperationNode(left, right, operator);
+    }
+
+    private static boolean isLiteral(NodeType node, int value) {
+        return node instanceof NumberNode n && n.value().scale() == 0 && n.value().compareTo(BigDecimal.valueOf(value)) == 0;
+    }
+
+    private interface Fold {
+        BigDecimal apply();
+    }
+
+    // Anything that fails (division by zero, bad factorial) is left in the tree so it fails at evaluation as before.
+    // Folding happens outside any evaluation, so operations over the default budget are left for evaluation too,
+    // where the caller's budget refuses them. So are results too long to be foldable, which a context would round,
+    // and BigMath calls still running after FOLD_TIMEOUT, which evaluation then runs against its own deadline.
+    private NumberNode tryFold(Fold fold) {
+        long deadline = System.nanoTime() + FOLD_TIMEOUT.toNanos();
+        BigMath.Deadline previous = BigMath.setDeadline(() -> {
+            if (System.nanoTime() - deadline > 0) throw new BudgetExceededException("Folding exceeded its time limit");
+        });
+        try {
+            BigDecimal value = fold.apply();
+            return foldable(value) ? new NumberNode(value) : null;
+        } catch (ArithmeticException | EvaluatorException e) {
+            return null;
+        } finally {
+            BigMath.setDeadline(previous);
+        }
+    }
+
+    // Unless it is only evaluated exactly, a tree may meet any precision, so only values none would round are folded:
+    // operands and results of at most Evaluator.MIN_PRECISION digits. An operation on values that short with a
+    // result that short gives the same value at any precision, folded or not. Longer literals and constants such as
+    // pi stay in the tree and are rounded, or looked up, at the context's precision.
+    private boolean foldable(BigDecimal value) {
+        return exact || value.precision() <= Evaluator.MIN_PRECISION;
+    }
+}
@@ -1,5 +1,6 @@
 package parser;
 
+import identifier.NativeFunctions.NativeFunction;
 import lexer.Token.*;
 
 import java.math.BigDecimal;
@@ -9,7 +10,8 @@ import java.util.stream.Collectors;
 public class Node {
     public sealed interface NodeType
             permits NumberNode, BinaryOperationNode, PrefixOperationNode,
-            SuffixOperationNode, VariableNode, FunctionNode {
+            SuffixOperationNode, VariableNode, FunctionNode, NativeFunctionNode,
+            LocalNode, GlobalNode, CallNode {
         String toString();
     }
 
@@ -55,4 +57,35 @@ public class Node {
 
         }
     }
-}
\ No newline at end of file
+
+    public record NativeFunctionNode(IdentifierToken function, NativeFunction target, List<NodeType> args) implements NodeType {
+        @Override
+        public String toString() {
+            return "(" + function.identifier() + "(" + args.stream().map(NodeType::toString).collect(Collectors.joining(", ")) + "))";
+        }
+    }
+
+    // Produced by the Resolver: a function parameter, read from the current call frame by index.
+    public record LocalNode(IdentifierToken variable, int slot) implements NodeType {
+        @Override
+        public String toString() {
+            return variable.identifier();
+        }
+    }
+
+    // Produced by the Resolver: any other variable, read from the session and global tables by Slots.variable index.
+    public record GlobalNode(IdentifierToken variable, int slot) implements NodeType {
+        @Override
+        public String toString() {
+            return variable.identifier();
+        }
+    }
+
+    // Produced by the Resolver: a user function call, looked up by Slots.function index.
+    public record CallNode(IdentifierToken function, int slot, List<NodeType> args) implements NodeType {
+        @Override
+        public String toString() {
+            return "(" + function.identifier() + "(" + args.stream().map(NodeType::toString).collect(Collectors.joining(", ")) + "))";
+        }
+    }
+}
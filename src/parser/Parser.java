@@ -1,135 +1,228 @@
 package parser;
 
 import Exceptions.ParserException;
+import identifier.NativeFunctions;
+import identifier.NativeFunctions.NativeFunction;
 import lexer.Token.*;
+import lexer.TokenBuffer;
 import parser.Node.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 
 import static lexer.Token.OperatorToken.getBindingPower;
 
+// An iterative Pratt parser: pending sub-expressions live on an explicit stack instead of the call stack,
+// so the nesting depth is bounded by MAX_DEPTH (-Dcalc.parser.maxDepth) rather than by the thread's stack size.
 public class Parser {
+    private static final int MAX_DEPTH = Integer.getInteger("calc.parser.maxDepth", 100_000);
+    private static final int PREFIX_BINDING_POWER = 9;
+
     private final TokenType[] tokens;
+    private final TokenBuffer buffer;
     private final int tokensLength;
     private int pos = 0;
+    private int materializedPos = -1;
+    private TokenType materialized;
 
     private Parser(TokenType[] tokens) {
         this.tokens = tokens;
+        this.buffer = null;
         this.tokensLength = tokens.length;
     }
 
+    private Parser(TokenBuffer buffer) {
+        this.tokens = null;
+        this.buffer = buffer;
+        this.tokensLength = buffer.size();
+    }
+
     public static NodeType parse(TokenType[] tokens) {
-        return new Parser(tokens).parseExpression(0);
+        return new Parser(tokens).parseExpression();
     }
 
-    private NodeType prefixNodeSoThatMyIDECanShutUP(PrefixToken prefix) {
-        return new PrefixOperationNode(parseExpression(9), prefix);
+    public static NodeType parse(TokenBuffer buffer) {
+        return new Parser(buffer).parseExpression();
     }
 
-    private NodeType parseExpression(int minBp) {
-        TokenType token = tokens[pos++];
-        NodeType lhs;
+    // Packed tokens are materialized one at a time, so numbers are only parsed when the parser reaches them.
+    private TokenType at(int i) {
+        if (tokens != null) return tokens[i];
+        if (i != materializedPos) {
+            materialized = buffer.token(i);
+            materializedPos = i;
+        }
+        return materialized;
+    }
 
-        switch (token) {
-            case NumberToken num -> lhs = new NumberNode(num.value());
-            case IdentifierToken id -> {
-                if (tokens[pos] == ParenthesisToken.OPEN) {
-                    pos++; // Consume '('
-                    ArrayList<NodeType> args = new ArrayList<>();
+    // Natives are bound here, once, so evaluating the call needs no lookup.
+    private static NodeType functionNode(IdentifierToken id, ArrayList<NodeType> args) {
+        NativeFunction target = NativeFunctions.find(id.identifier());
+        if (target == null) return new FunctionNode(id, args);
+        if (!target.accepts(args.size())) {
+            throw new ParserException("Function '" + id.identifier() + "' expects " + target.arity() + " args, got " + args.size());
+        }
+        return new NativeFunctionNode(id, target, args);
+    }
+
+    // What a finished sub-expression becomes in the expression that was waiting for it.
+    private enum Role { ROOT, PREFIX, GROUP, IMPLICIT_GROUP, OPERAND, ARGUMENT }
+
+    private record Call(IdentifierToken id, ArrayList<NodeType> args, boolean implicit) {
+    }
+
+    // One pending sub-expression, what a recursive Pratt parser would keep in a stack frame.
+    private static final class Frame {
+        private final int minBp;
+        private final Role role;
+        private final Object owner; // PrefixToken, OperatorToken or Call, depending on role
+        private NodeType lhs;
+
+        private Frame(int minBp, Role role, Object owner) {
+            this.minBp = minBp;
+            this.role = role;
+            this.owner = owner;
+        }
+    }
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+    private Frame open(Frame current, int minBp, Role role, Object owner) {
+        if (frames.size() >= MAX_DEPTH) {
+            throw new ParserException("Expression nested too deeply (limit " + MAX_DEPTH + ")");
+        }
+        frames.push(current);
+        return new Frame(minBp, role, owner);
+    }
 
-                    while (tokens[pos] != ParenthesisToken.CLOSE) {
-                        args.add(parseExpression(0));
-                        if (tokens[pos] != ParenthesisToken.CLOSE && tokens[pos++] != CommaToken.COMMA_TOKEN) {
-                            throw new ParserException("Expected comma between arguments");
+    // Starts the arguments of a call whose '(' is at pos; a call with no arguments is finished right away.
+    private Frame openCall(Frame current, IdentifierToken id, boolean implicit) {
+        pos++; // Consume '('
+        if (at(pos) == ParenthesisToken.CLOSE) {
+            pos++; // Consume ')'
+            NodeType call = functionNode(id, new ArrayList<>());
+            current.lhs = implicit ? new BinaryOperationNode(current.lhs, call, OperatorToken.MUL) : call;
+            return current;
+        }
+        return open(current, 0, Role.ARGUMENT, new Call(id, new ArrayList<>(), implicit));
+    }
+
+    private NodeType parseExpression() {
+        Frame current = new Frame(0, Role.ROOT, null);
+
+        while (true) {
+            if (current.lhs == null) {
+                TokenType token = at(pos++);
+                switch (token) {
+                    case NumberToken num -> current.lhs = new NumberNode(num.value());
+                    case IdentifierToken id -> {
+                        if (at(pos) == ParenthesisToken.OPEN) {
+                            current = openCall(current, id, false);
+                            continue;
                         }
+                        current.lhs = new VariableNode(id);
                     }
-
-                    pos++; // Consume '('
-                    lhs = new FunctionNode(id, args);
-                } else {
-                    lhs = new VariableNode(id);
+                    case PrefixToken prefix -> {
+                        current = open(current, PREFIX_BINDING_POWER, Role.PREFIX, prefix);
+                        continue;
+                    }
+                    case ParenthesisToken p when p == ParenthesisToken.OPEN -> {
+                        current = open(current, 0, Role.GROUP, null);
+                        continue;
+                    }
+                    default -> throw new ParserException("Unexpected token: " + token);
                 }
             }
-            case PrefixToken prefix -> lhs = prefixNodeSoThatMyIDECanShutUP(prefix);
-            case ParenthesisToken p when p == ParenthesisToken.OPEN -> {
-                lhs = parseExpression(0);
-                if (tokens[pos] != ParenthesisToken.CLOSE) {
-                    throw new ParserException("Expected closing parenthesis");
-                }
-                pos++;
+
+            Frame child = operators(current);
+            if (child != null) {
+                current = child;
+                continue;
             }
-            default -> throw new ParserException("Unexpected token: " + token);
+
+            if (frames.isEmpty()) return current.lhs;
+            current = finish(current, frames.pop());
         }
+    }
+
+    // Applies operators to current.lhs until one binds less tightly than minBp; returns a new frame when an
+    // operand has to be parsed first.
+    private Frame operators(Frame current) {
+        final int mulBp = getBindingPower(OperatorToken.MUL)[0];
 
-        loop:
         while (pos < tokensLength) {
-            int[] bp;
-            OperatorToken implicitMul = OperatorToken.MUL;
-            TokenType next = tokens[pos];
+            TokenType next = at(pos);
 
             switch (next) {
-                case EndToken ignored -> { break loop; }
-                case CommaToken ignored -> { break loop; }
-                case SemiColonToken ignored -> { break loop; }
+                case EndToken ignored -> { return null; }
+                case CommaToken ignored -> { return null; }
+                case SemiColonToken ignored -> { return null; }
                 case ParenthesisToken parenthesis -> {
-                    if (parenthesis == ParenthesisToken.CLOSE) break loop;
-
-                    bp = getBindingPower(implicitMul);
-                    if (bp[0] < minBp) break loop;
-
-                    pos++; // Consume'('
-                    NodeType rhs = parseExpression(0);
-                    if (tokens[pos] != ParenthesisToken.CLOSE)
-                        throw new ParserException("Expected closing parenthesis");
-                    pos++; // Consume ')'
-
-                    lhs = new BinaryOperationNode(lhs, rhs, implicitMul);
+                    if (parenthesis == ParenthesisToken.CLOSE || mulBp < current.minBp) return null;
+                    pos++; // Consume '('
+                    return open(current, 0, Role.IMPLICIT_GROUP, null);
                 }
                 case SuffixToken suffix -> {
                     pos++; // Consume 'suffix'
-                    lhs = new SuffixOperationNode(lhs, suffix);
+                    current.lhs = new SuffixOperationNode(current.lhs, suffix);
                 }
                 case IdentifierToken id -> {
-                    NodeType rhs;
+                    if (mulBp < current.minBp) return null;
                     pos++; // Consume 'variable'
-                    if (tokens[pos] == ParenthesisToken.OPEN) {
-                        pos++; // Consume '('
-                        ArrayList<NodeType> args = new ArrayList<>();
-
-                        while (tokens[pos] != ParenthesisToken.CLOSE) {
-                            args.add(parseExpression(0));
-                            if (tokens[pos] != ParenthesisToken.CLOSE && tokens[pos++] != CommaToken.COMMA_TOKEN) {
-                                throw new ParserException("Expected comma between arguments");
-                            }
-                        }
-
-                        pos++; // Consume ')'
-                        rhs = new FunctionNode(id, args);
+                    if (at(pos) == ParenthesisToken.OPEN) {
+                        Frame frame = openCall(current, id, true);
+                        if (frame != current) return frame;
                     } else {
-                        rhs = new VariableNode(id);
+                        current.lhs = new BinaryOperationNode(current.lhs, new VariableNode(id), OperatorToken.MUL);
                     }
-
-                    bp = getBindingPower(implicitMul);
-                    if (bp[0] < minBp) break loop;
-                    lhs = new BinaryOperationNode(lhs, rhs, implicitMul);
                 }
                 case OperatorToken operator -> {
-                    bp = getBindingPower(operator);
-                    if (bp[0] < minBp) break loop;
+                    int[] bp = getBindingPower(operator);
+                    if (bp[0] < current.minBp) return null;
                     pos++; // Consume 'operator'
-                    lhs = new BinaryOperationNode(lhs, parseExpression(bp[1]), operator);
+                    return open(current, bp[1], Role.OPERAND, operator);
                 }
                 case NumberToken(BigDecimal value) -> {
-                    bp = getBindingPower(implicitMul);
-                    if (bp[0] < minBp) break loop;
+                    if (mulBp < current.minBp) return null;
                     pos++; // Consume 'number'
-                    NodeType rhs = new NumberNode(value);
-                    lhs = new BinaryOperationNode(lhs, rhs, implicitMul);
+                    current.lhs = new BinaryOperationNode(current.lhs, new NumberNode(value), OperatorToken.MUL);
                 }
                 case PrefixToken ignored -> throw new ParserException("This shouldn't be here");
             }
         }
-        return lhs;
+        return null;
+    }
+
+    // Hands a finished sub-expression to the frame that was waiting for it and returns the frame to resume.
+    private Frame finish(Frame done, Frame parent) {
+        NodeType result = done.lhs;
+        switch (done.role) {
+            case PREFIX -> parent.lhs = new PrefixOperationNode(result, (PrefixToken) done.owner);
+            case GROUP, IMPLICIT_GROUP -> {
+                if (at(pos) != ParenthesisToken.CLOSE) {
+                    throw new ParserException("Expected closing parenthesis");
+                }
+                pos++; // Consume ')'
+                parent.lhs = done.role == Role.GROUP ? result : new BinaryOperationNode(parent.lhs, result, OperatorToken.MUL);
+            }
+            case OPERAND -> parent.lhs = new BinaryOperationNode(parent.lhs, result, (OperatorToken) done.owner);
+            case ARGUMENT -> {
+                Call call = (Call) done.owner;
+                call.args().add(result);
+                if (at(pos) != ParenthesisToken.CLOSE && at(pos++) != CommaToken.COMMA_TOKEN) {
+                    throw new ParserException("Expected comma between arguments");
+                }
+                if (at(pos) != ParenthesisToken.CLOSE) {
+                    frames.push(parent);
+                    return new Frame(0, Role.ARGUMENT, call);
+                }
+                pos++; // Consume ')'
+                NodeType node = functionNode(call.id(), call.args());
+                parent.lhs = call.implicit() ? new BinaryOperationNode(parent.lhs, node, OperatorToken.MUL) : node;
+            }
+            case ROOT -> throw new IllegalStateException("The root expression has no parent");
+        }
+        return parent;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package parser;
+
+import parser.Node.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Tree walks with an explicit stack, so passes over machine-generated expressions don't overflow the call stack.
+public class Trees {
+    @FunctionalInterface
+    public interface Rebuild {
+        // 'children' are the already rebuilt children of 'node', in order.
+        NodeType apply(NodeType node, List<NodeType> children);
+    }
+
+    public static List<NodeType> children(NodeType node) {
+        return switch (node) {
+            case BinaryOperationNode b -> List.of(b.left(), b.right());
+            case PrefixOperationNode p -> List.of(p.value());
+            case SuffixOperationNode s -> List.of(s.value());
+            case FunctionNode f -> f.args();
+            case CallNode c -> c.args();
+            case NativeFunctionNode n -> n.args();
+            case NumberNode ignored -> List.of();
+            case VariableNode ignored -> List.of();
+            case LocalNode ignored -> List.of();
+            case GlobalNode ignored -> List.of();
+        };
+    }
+
+    // Bottom-up: every node is rebuilt after all of its children.
+    public static NodeType rebuild(NodeType root, Rebuild rebuild) {
+        ArrayList<NodeType> pending = new ArrayList<>();
+        ArrayList<Boolean> expanded = new ArrayList<>();
+        ArrayList<NodeType> results = new ArrayList<>();
+        pending.add(root);
+        expanded.add(false);
+
+        while (!pending.isEmpty()) {
+            int top = pending.size() - 1;
+            NodeType node = pending.get(top);
+            List<NodeType> children = children(node);
+
+            if (!children.isEmpty() && !expanded.get(top)) {
+                expanded.set(top, true);
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    pending.add(children.get(i));
+                    expanded.add(false);
+                }
+                continue;
+            }
+
+            pending.remove(top);
+            expanded.remove(top);
+            int first = results.size() - children.size();
+            List<NodeType> rebuilt = new ArrayList<>(results.subList(first, results.size()));
+            results.subList(first, results.size()).clear();
+            results.add(rebuild.apply(node, rebuilt));
+        }
+        return results.get(0);
+    }
+
+    // Pre-order, left to right.
+    public static void forEach(NodeType root, Consumer<NodeType> action) {
+        ArrayList<NodeType> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            NodeType node = pending.remove(pending.size() - 1);
+            action.accept(node);
+            List<NodeType> children = children(node);
+            for (int i = children.size() - 1; i >= 0; i--) pending.add(children.get(i));
+        }
+    }
+
+    public static int depth(NodeType root) {
+        ArrayList<NodeType> pending = new ArrayList<>();
+        ArrayList<Integer> depths = new ArrayList<>();
+        pending.add(root);
+        depths.add(1);
+
+        int max = 0;
+        while (!pending.isEmpty()) {
+            int last = pending.size() - 1;
+            NodeType node = pending.remove(last);
+            int depth = depths.remove(last);
+            max = Math.max(max, depth);
+            for (NodeType child : children(node)) {
+                pending.add(child);
+                depths.add(depth + 1);
+            }
+        }
+        return max;
+    }
+}
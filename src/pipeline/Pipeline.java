@@ -0,0 +1,205 @@
+package pipeline;
+
+import calculator.Calculator.CalcResult;
+import calculator.CalculatorSession;
+import evaluator.EvaluationContext;
+import lexer.Token.TokenType;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Lexes, parses and evaluates independent expressions as separate stages on a shared executor.
+// Inputs are grouped into batches, at most 'maxInFlight' batches are in the pipeline at once,
+// and results are handed to the consumer in input order.
+public class Pipeline implements AutoCloseable {
+    public static final class Stage {
+        private final String name;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final AtomicInteger queueDepth = new AtomicInteger();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        private void enqueue() {
+            maxQueueDepth.accumulateAndGet(queueDepth.incrementAndGet(), Math::max);
+        }
+
+        private Object[] run(Object[] values, Function<Object, Object> step) {
+            queueDepth.decrementAndGet();
+            long start = System.nanoTime();
+            Object[] result = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof RuntimeException) {
+                    result[i] = values[i];
+                    continue;
+                }
+                try {
+                    result[i] = step.apply(values[i]);
+                } catch (RuntimeException e) {
+                    result[i] = e;
+                }
+            }
+            busyNanos.add(System.nanoTime() - start);
+            items.add(values.length);
+            batches.increment();
+            return result;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long items() {
+            return items.sum();
+        }
+
+        public long batches() {
+            return batches.sum();
+        }
+
+        public long busyNanos() {
+            return busyNanos.sum();
+        }
+
+        // Items per second of time spent working in this stage, summed over threads.
+        public double throughput() {
+            long nanos = busyNanos();
+            return nanos == 0 ? 0 : items() * 1e9 / nanos;
+        }
+
+        public int queueDepth() {
+            return queueDepth.get();
+        }
+
+        public int maxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[items=%d, batches=%d, throughput=%.0f/s, queue=%d, maxQueue=%d]",
+                    name, items(), batches(), throughput(), queueDepth(), maxQueueDepth());
+        }
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final EvaluationContext context;
+    private final Stage lexStage = new Stage("lex");
+    private final Stage parseStage = new Stage("parse");
+    private final Stage evaluateStage = new Stage("evaluate");
+
+    public Pipeline(ExecutorService executor, int batchSize, int maxInFlight, CalculatorSession session) {
+        this(executor, false, batchSize, maxInFlight, session);
+    }
+
+    private Pipeline(ExecutorService executor, boolean ownsExecutor, int batchSize, int maxInFlight, CalculatorSession session) {
+        if (batchSize <= 0 || maxInFlight <= 0) throw new IllegalArgumentException("Batch size and in-flight limit must be positive");
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.context = session.getContext();
+    }
+
+    public static Pipeline platform(int threads) {
+        return new Pipeline(Executors.newFixedThreadPool(threads), true, DEFAULT_BATCH_SIZE, threads * 4, new CalculatorSession());
+    }
+
+    public static Pipeline virtual(int maxInFlight) {
+        return new Pipeline(Executors.newVirtualThreadPerTaskExecutor(), true, DEFAULT_BATCH_SIZE, maxInFlight, new CalculatorSession());
+    }
+
+    public List<String> evaluateAll(List<String> inputs) {
+        List<String> results = new ArrayList<>(inputs.size());
+        evaluateAll(inputs.iterator(), results::add);
+        return results;
+    }
+
+    // Each result is the formatted value, or "Error: <message>" for inputs that failed in any stage.
+    public void evaluateAll(Iterator<String> inputs, Consumer<String> output) {
+        Semaphore permits = new Semaphore(maxInFlight);
+        ArrayDeque<CompletableFuture<Object[]>> pending = new ArrayDeque<>();
+
+        while (inputs.hasNext()) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && inputs.hasNext()) batch.add(inputs.next());
+
+            permits.acquireUninterruptibly();
+            pending.add(submit(batch.toArray()).whenComplete((result, error) -> permits.release()));
+
+            while (!pending.isEmpty() && pending.peek().isDone()) emit(pending.poll(), output);
+        }
+
+        while (!pending.isEmpty()) emit(pending.poll(), output);
+    }
+
+    private CompletableFuture<Object[]> submit(Object[] batch) {
+        // Each batch evaluates in its own fork so fallback function calls never share a scope stack.
+        EvaluationContext batchContext = context.fork();
+        lexStage.enqueue();
+        return CompletableFuture
+                .supplyAsync(() -> handOff(lexStage.run(batch, input -> tokenize((String) input)), parseStage), executor)
+                .thenApplyAsync(tokens -> handOff(parseStage.run(tokens, t -> resolve(optimize(parse((TokenType[]) t)))), evaluateStage), executor)
+                .thenApplyAsync(trees -> evaluateStage.run(trees, tree -> {
+                    // The budget is per expression and starts with its evaluation, not while the batch was queued.
+                    batchContext.startBudget();
+                    return evaluate((NodeType) tree, batchContext);
+                }), executor);
+    }
+
+    private static Object[] handOff(Object[] values, Stage next) {
+        next.enqueue();
+        return values;
+    }
+
+    private static void emit(CompletableFuture<Object[]> batch, Consumer<String> output) {
+        for (Object value : batch.join()) {
+            if (value instanceof RuntimeException e) {
+                output.accept("Error: " + e.getMessage());
+            } else {
+                output.accept(new CalcResult((BigDecimal) value).commas());
+            }
+        }
+    }
+
+    public List<Stage> stages() {
+        return List.of(lexStage, parseStage, evaluateStage);
+    }
+
+    @Override
+    public String toString() {
+        return "Pipeline" + stages();
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) executor.close();
+    }
+}
@@ -0,0 +1,423 @@
+package reactive;
+
+import Exceptions.CalculatorException;
+import evaluator.EvaluationContext;
+import evaluator.Evaluator;
+import identifier.Functions.Function;
+import identifier.Variables;
+import parser.Node.*;
+import parser.Trees;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Keeps a set of named expressions (cells) up to date as the variables they read change.
+// Each cell records every variable, function and other cell it reaches, including through function bodies,
+// and a change recomputes only the cells downstream of it, in dependency order. Within a cell, every subtree
+// keeps its last value and is only re-evaluated when one of its own dependencies changed.
+// A cell's result is visible to later cells as a variable of the same name.
+// All methods lock the engine; listeners run on the thread that made the change, after it has fully propagated.
+public class ReactiveEngine {
+    @FunctionalInterface
+    public interface Listener {
+        void updated(Cell cell);
+    }
+
+    public static class Cell {
+        private final String name;
+        private String expression;
+        private Binding binding;
+        private int order;
+        private volatile BigDecimal value;
+        private volatile RuntimeException error;
+
+        private Cell(String name) {
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String expression() {
+            return expression;
+        }
+
+        // Null while the cell is in error.
+        public BigDecimal value() {
+            return value;
+        }
+
+        public RuntimeException error() {
+            return error;
+        }
+
+        public Set<String> dependencies() {
+            return Collections.unmodifiableSet(binding.dependencies());
+        }
+
+        @Override
+        public String toString() {
+            return name + " = " + (error != null ? "Error: " + error.getMessage() : value);
+        }
+    }
+
+    private record Binding(Memo root, Set<String> dependencies) {
+    }
+
+    private static final int MAX_MEMO_DEPTH = 256;
+
+    private final EvaluationContext context = new EvaluationContext();
+    private final Map<String, Cell> cells = new LinkedHashMap<>();
+    // Name of a variable, function or cell -> the cells that read it.
+    private final Map<String, Set<Cell>> dependents = new HashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private long evaluations = 0;
+
+    public synchronized Cell register(String name, String expression) {
+        if (Variables.isConstant(name)) {
+            throw new CalculatorException(String.format("Cell %s would shadow a constant", name));
+        }
+        Binding binding = bind(resolve(optimize(parse(tokenize(expression)))), context);
+
+        Cell cell = cells.get(name);
+        if (cell == null) cell = new Cell(name);
+        Map<Cell, Set<String>> graph = graph();
+        graph.put(cell, binding.dependencies());
+        List<Cell> sorted = sort(graph);
+
+        cell.expression = expression;
+        cell.binding = binding;
+        cells.put(name, cell);
+        commit(sorted);
+        propagate(new HashSet<>(), Set.of(cell));
+        return cell;
+    }
+
+    public synchronized void unregister(String name) {
+        Cell cell = cells.remove(name);
+        if (cell == null) return;
+
+        context.removeVariable(name);
+        commit(sort(graph()));
+        propagate(new HashSet<>(Set.of(name)), Set.of());
+    }
+
+    public void set(String name, String value) {
+        set(name, new BigDecimal(value));
+    }
+
+    public synchronized void set(String name, BigDecimal value) {
+        setAll(Map.of(name, value));
+    }
+
+    // Applies every change before recomputing, so a cell reading several of them is evaluated once.
+    public synchronized void setAll(Map<String, BigDecimal> values) {
+        for (String name : values.keySet()) {
+            if (cells.containsKey(name)) {
+                throw new CalculatorException(String.format("%s is a computed cell", name));
+            }
+        }
+        for (Map.Entry<String, BigDecimal> entry : values.entrySet()) {
+            context.setVariable(entry.getKey(), entry.getValue());
+        }
+        propagate(new HashSet<>(values.keySet()), Set.of());
+    }
+
+    // For built-ins changed directly through Variables.set, which the engine doesn't see.
+    public synchronized void refresh(String... names) {
+        propagate(new HashSet<>(Arrays.asList(names)), Set.of());
+    }
+
+    public synchronized void defineFunction(String name, List<String> params, String body) {
+        // Bind against a trial definition first so a body that closes a cycle is rejected without side effects.
+        EvaluationContext trial = context.fork();
+        trial.defineFunction(name, params, body);
+
+        Map<Cell, Binding> rebound = new HashMap<>();
+        Map<Cell, Set<String>> graph = graph();
+        for (Cell cell : dependents.getOrDefault(name, Set.of())) {
+            Binding binding = bind(cell.binding.root().node, trial);
+            rebound.put(cell, binding);
+            graph.put(cell, binding.dependencies());
+        }
+        List<Cell> sorted = sort(graph);
+
+        context.defineFunction(name, params, body);
+        rebound.forEach((cell, binding) -> cell.binding = binding);
+        commit(sorted);
+        propagate(new HashSet<>(Set.of(name)), Set.of());
+    }
+
+    public synchronized BigDecimal get(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null) throw new CalculatorException("Cell not found: " + name);
+        if (cell.error != null) throw cell.error;
+        return cell.value;
+    }
+
+    public synchronized Cell cell(String name) {
+        return cells.get(name);
+    }
+
+    public synchronized Collection<Cell> cells() {
+        return List.copyOf(cells.values());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Subtree evaluations since the engine was created; memoized subtrees don't count.
+    public synchronized long evaluations() {
+        return evaluations;
+    }
+
+    public EvaluationContext getContext() {
+        return context;
+    }
+
+    // 'changed' grows as cells change value, which is what lets unchanged results stop the propagation.
+    private void propagate(Set<String> changed, Set<Cell> forced) {
+        PriorityQueue<Cell> queue = new PriorityQueue<>(Comparator.comparingInt(cell -> cell.order));
+        Set<Cell> queued = new HashSet<>(forced);
+        queue.addAll(forced);
+        for (String name : changed) enqueueDependents(name, queue, queued);
+
+        List<Cell> updated = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            Cell cell = queue.poll();
+            if (recompute(cell, changed)) {
+                changed.add(cell.name);
+                enqueueDependents(cell.name, queue, queued);
+                updated.add(cell);
+            }
+        }
+
+        for (Cell cell : updated) {
+            for (Listener listener : listeners) listener.updated(cell);
+        }
+    }
+
+    private void enqueueDependents(String name, PriorityQueue<Cell> queue, Set<Cell> queued) {
+        for (Cell dependent : dependents.getOrDefault(name, Set.of())) {
+            if (queued.add(dependent)) queue.add(dependent);
+        }
+    }
+
+    private boolean recompute(Cell cell, Set<String> changed) {
+        BigDecimal previous = cell.value;
+        RuntimeException previousError = cell.error;
+
+        // Narrow 'changed', which grows with every updated cell, to the few names this cell reads.
+        Set<String> relevant = new HashSet<>();
+        for (String dependency : cell.binding.dependencies()) {
+            if (changed.contains(dependency)) relevant.add(dependency);
+        }
+        cell.binding.root().invalidate(relevant);
+        // Each recompute is its own evaluation as far as the budget goes, like a row of a batch.
+        context.startBudget();
+        try {
+            cell.value = cell.binding.root().value();
+            cell.error = null;
+            context.setVariable(cell.name, cell.value);
+        } catch (RuntimeException e) {
+            cell.value = null;
+            cell.error = e;
+            context.removeVariable(cell.name);
+        }
+
+        return !Objects.equals(previous, cell.value) || !Objects.equals(message(previousError), message(cell.error));
+    }
+
+    private static String message(RuntimeException error) {
+        return error == null ? null : error.getMessage();
+    }
+
+    private Map<Cell, Set<String>> graph() {
+        Map<Cell, Set<String>> graph = new LinkedHashMap<>();
+        for (Cell cell : cells.values()) graph.put(cell, cell.binding.dependencies());
+        return graph;
+    }
+
+    // Kahn's algorithm over the cell-to-cell edges; registration order breaks ties.
+    private static List<Cell> sort(Map<Cell, Set<String>> graph) {
+        Map<String, Cell> byName = new HashMap<>();
+        for (Cell cell : graph.keySet()) byName.put(cell.name, cell);
+
+        Map<Cell, Integer> pending = new HashMap<>();
+        Map<Cell, List<Cell>> readers = new HashMap<>();
+        ArrayDeque<Cell> ready = new ArrayDeque<>();
+        for (Map.Entry<Cell, Set<String>> entry : graph.entrySet()) {
+            int count = 0;
+            for (String dependency : entry.getValue()) {
+                Cell source = byName.get(dependency);
+                if (source == null) continue;
+                readers.computeIfAbsent(source, k -> new ArrayList<>()).add(entry.getKey());
+                count++;
+            }
+            pending.put(entry.getKey(), count);
+            if (count == 0) ready.add(entry.getKey());
+        }
+
+        List<Cell> sorted = new ArrayList<>(graph.size());
+        while (!ready.isEmpty()) {
+            Cell cell = ready.poll();
+            sorted.add(cell);
+            for (Cell reader : readers.getOrDefault(cell, List.of())) {
+                if (pending.merge(reader, -1, Integer::sum) == 0) ready.add(reader);
+            }
+        }
+
+        if (sorted.size() < graph.size()) {
+            List<String> cycle = new ArrayList<>();
+            for (Cell cell : graph.keySet()) if (pending.get(cell) > 0) cycle.add(cell.name);
+            throw new CalculatorException("Circular dependency between cells: " + String.join(", ", cycle));
+        }
+        return sorted;
+    }
+
+    private void commit(List<Cell> sorted) {
+        dependents.clear();
+        for (int i = 0; i < sorted.size(); i++) {
+            Cell cell = sorted.get(i);
+            cell.order = i;
+            for (String dependency : cell.binding.dependencies()) {
+                dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(cell);
+            }
+        }
+    }
+
+    private Binding bind(NodeType tree, EvaluationContext scope) {
+        // Memos recurse once per level, so very deep trees are kept whole and re-evaluated by the evaluator.
+        Memo root = Trees.depth(tree) > MAX_MEMO_DEPTH ? new Memo(tree, names(tree, scope)) : memo(tree, scope);
+        return new Binding(root, root.dependencies);
+    }
+
+    private Memo memo(NodeType node, EvaluationContext scope) {
+        return switch (node) {
+            case BinaryOperationNode b -> new Memo(node, memo(b.left(), scope), memo(b.right(), scope));
+            case PrefixOperationNode p -> new Memo(node, memo(p.value(), scope));
+            case SuffixOperationNode s -> new Memo(node, memo(s.value(), scope));
+            case NativeFunctionNode n -> new Memo(node, memoAll(n.args(), scope));
+            case CallNode c -> withFunction(new Memo(node, memoAll(c.args(), scope)), c.function().identifier(), scope);
+            case FunctionNode f -> withFunction(new Memo(node, memoAll(f.args(), scope)), f.function().identifier(), scope);
+            case GlobalNode g -> new Memo(node, Set.of(g.variable().identifier()));
+            case VariableNode v -> new Memo(node, Set.of(v.variable().identifier()));
+            case NumberNode n -> new Memo(node, Set.of());
+            case LocalNode l -> new Memo(node, Set.of());
+        };
+    }
+
+    private Memo[] memoAll(List<NodeType> args, EvaluationContext scope) {
+        Memo[] memos = new Memo[args.size()];
+        for (int i = 0; i < memos.length; i++) memos[i] = memo(args.get(i), scope);
+        return memos;
+    }
+
+    // A call depends on the function itself and on every global its body can reach.
+    private static Memo withFunction(Memo memo, String name, EvaluationContext scope) {
+        memo.dependencies.add(name);
+        Function function = scope.findFunction(name);
+        if (function != null) memo.dependencies.addAll(names(function.body(), scope));
+        return memo;
+    }
+
+    // Every variable and function name the tree reaches, through function bodies too.
+    private static Set<String> names(NodeType tree, EvaluationContext scope) {
+        Set<String> result = new HashSet<>();
+        ArrayDeque<NodeType> pending = new ArrayDeque<>();
+        pending.push(tree);
+
+        while (!pending.isEmpty()) {
+            Trees.forEach(pending.pop(), node -> {
+                String function = switch (node) {
+                    case GlobalNode g -> {
+                        result.add(g.variable().identifier());
+                        yield null;
+                    }
+                    case VariableNode v -> {
+                        result.add(v.variable().identifier());
+                        yield null;
+                    }
+                    case CallNode c -> c.function().identifier();
+                    case FunctionNode f -> f.function().identifier();
+                    default -> null;
+                };
+                if (function == null || !result.add(function)) return;
+
+                Function definition = scope.findFunction(function);
+                if (definition != null) pending.push(definition.body());
+            });
+        }
+        return result;
+    }
+
+    private final class Memo {
+        private static final Memo[] NONE = new Memo[0];
+
+        private final NodeType node;
+        private final Memo[] children;
+        private final Set<String> dependencies;
+        private BigDecimal value;
+        private boolean valid;
+
+        private Memo(NodeType node, Set<String> dependencies) {
+            this.node = node;
+            this.children = NONE;
+            this.dependencies = dependencies;
+        }
+
+        private Memo(NodeType node, Memo... children) {
+            this.node = node;
+            this.children = children;
+            this.dependencies = new HashSet<>();
+            for (Memo child : children) dependencies.addAll(child.dependencies);
+        }
+
+        private void invalidate(Set<String> changed) {
+            if (!readsAny(changed)) return;
+            valid = false;
+            for (Memo child : children) child.invalidate(changed);
+        }
+
+        private boolean readsAny(Set<String> names) {
+            for (String name : names) {
+                if (dependencies.contains(name)) return true;
+            }
+            return false;
+        }
+
+        private BigDecimal value() {
+            if (valid) return value;
+
+            value = children.length == 0 ? Evaluator.evaluate(node, context) : switch (node) {
+                case BinaryOperationNode b -> Evaluator.binary(b.operator(), children[0].value(), children[1].value(), context);
+                case PrefixOperationNode p -> Evaluator.prefix(p.prefix(), children[0].value());
+                case SuffixOperationNode s -> Evaluator.suffix(s.suffix(), children[0].value(), context);
+                case NativeFunctionNode n -> Evaluator.apply(n.target(), arguments(), context);
+                case CallNode c -> Evaluator.call(c.slot(), c.function().identifier(), arguments(), context);
+                default -> throw new IllegalStateException("Leaf node with children: " + node);
+            };
+            evaluations++;
+            valid = true;
+            return value;
+        }
+
+        private BigDecimal[] arguments() {
+            BigDecimal[] args = new BigDecimal[children.length];
+            for (int i = 0; i < args.length; i++) args[i] = children[i].value();
+            return args;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package resolver;
+
+import identifier.Slots;
+import lexer.Token.IdentifierToken;
+import parser.Node.*;
+import parser.Trees;
+
+import java.util.List;
+
+// Binds every name in a tree to an index once, so evaluation reads arrays instead of hashing strings.
+// Parameters become LocalNodes (their position in the call frame), other variables GlobalNodes and
+// user function calls CallNodes. Already resolved nodes are kept, except globals named in 'params'.
+public class Resolver {
+    private final List<String> params;
+
+    private Resolver(List<String> params) {
+        this.params = params;
+    }
+
+    public static NodeType resolve(NodeType node) {
+        return resolve(node, List.of());
+    }
+
+    public static NodeType resolve(NodeType node, List<String> params) {
+        return new Resolver(params).bind(node);
+    }
+
+    private NodeType bind(NodeType node) {
+        return Trees.rebuild(node, this::bind);
+    }
+
+    // 'children' are already resolved.
+    private NodeType bind(NodeType node, List<NodeType> children) {
+        return switch (node) {
+            case NumberNode n -> n;
+            case LocalNode l -> l;
+            case VariableNode v -> bindVariable(v.variable());
+            // Re-resolving against parameters turns matching globals into locals.
+            case GlobalNode g -> params.contains(g.variable().identifier()) ? bindVariable(g.variable()) : g;
+            case BinaryOperationNode b -> new BinaryOperationNode(children.get(0), children.get(1), b.operator());
+            case PrefixOperationNode p -> new PrefixOperationNode(children.get(0), p.prefix());
+            case SuffixOperationNode s -> new SuffixOperationNode(children.get(0), s.suffix());
+            case FunctionNode f -> new CallNode(f.function(), Slots.function(f.function().identifier()), children);
+            case CallNode c -> new CallNode(c.function(), c.slot(), children);
+            case NativeFunctionNode n -> new NativeFunctionNode(n.function(), n.target(), children);
+        };
+    }
+
+    private NodeType bindVariable(IdentifierToken variable) {
+        String name = variable.identifier();
+        int slot = params.indexOf(name);
+        return slot >= 0 ? new LocalNode(variable, slot) : new GlobalNode(variable, Slots.variable(name));
+    }
+}
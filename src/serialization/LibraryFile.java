@@ -0,0 +1,348 @@
+package serialization;
+
+import Exceptions.CalculatorException;
+import evaluator.EvaluationContext;
+import identifier.Functions;
+import identifier.Functions.Function;
+import identifier.NativeFunctions;
+import identifier.NativeFunctions.NativeFunction;
+import identifier.Slots;
+import identifier.Variables;
+import lexer.Token.*;
+import parser.Node.*;
+import parser.Trees;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Compiled function and variable tables in a compact binary file, so a process can restore a library
+// without lexing, parsing, optimizing or resolving anything.
+//
+// Layout, little-endian: magic "CALC", version, payload length and the CRC32 of the payload, then the payload:
+// a string table, a number table, the variables as (name, number) pairs and the functions as
+// (name, params, body). Counts and indices are unsigned varints. A body is its node count followed by the
+// nodes in post-order, each a tag byte and its operands, so it is rebuilt with a stack and no recursion.
+// Slots are per process, so names are stored and slots assigned again on load.
+public class LibraryFile {
+    public record Library(Map<String, Function> functions, Map<String, BigDecimal> variables) {
+    }
+
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x434C4143;
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte NUMBER = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte LOCAL = 2;
+    private static final byte GLOBAL = 3;
+    private static final byte BINARY = 4;
+    private static final byte PREFIX = 5;
+    private static final byte SUFFIX = 6;
+    private static final byte FUNCTION = 7;
+    private static final byte CALL = 8;
+    private static final byte NATIVE = 9;
+
+    private static final OperatorToken[] OPERATORS = OperatorToken.values();
+    private static final PrefixToken[] PREFIXES = PrefixToken.values();
+    private static final SuffixToken[] SUFFIXES = SuffixToken.values();
+
+    // The global tables, built-ins included.
+    public static Library snapshot() {
+        return new Library(Functions.getFunctionMap(), Variables.getVariableMap());
+    }
+
+    // A session's own definitions, without the built-ins.
+    public static Library snapshot(EvaluationContext context) {
+        return new Library(context.getFunctions(), context.getVariables());
+    }
+
+    public static void install(Library library) {
+        Variables.putAll(library.variables());
+        Functions.putAll(library.functions());
+    }
+
+    public static void install(Library library, EvaluationContext context) {
+        library.variables().forEach((name, value) -> {
+            if (!Variables.isConstant(name)) context.setVariable(name, value);
+        });
+        library.functions().forEach(context::defineFunction);
+    }
+
+    // Written to a sibling file first and moved into place, so readers never map a half-written library.
+    public static void write(Path path, Library library) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temporary, encode(library));
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Library read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new CalculatorException("Library file too large: " + path);
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static byte[] encode(Library library) {
+        Encoder encoder = new Encoder();
+        encoder.variables(library.variables());
+        encoder.functions(library.functions());
+        byte[] payload = encoder.payload();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer file = ByteBuffer.allocate(HEADER_SIZE + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        file.putInt(MAGIC).putInt(VERSION).putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return file.array();
+    }
+
+    public static Library decode(ByteBuffer file) {
+        ByteBuffer buffer = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new CalculatorException("Not a library file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new CalculatorException("Unsupported library version " + version + ", expected " + VERSION);
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new CalculatorException("Truncated library file");
+
+        ByteBuffer payload = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) throw new CalculatorException("Library file checksum mismatch");
+
+        try {
+            return new Decoder(payload).library();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // The checksum passed, so the writer produced this; report it rather than a bare buffer error.
+            throw new CalculatorException("Malformed library file: " + e);
+        }
+    }
+
+    private static final class Encoder {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final Map<BigDecimal, Integer> numbers = new LinkedHashMap<>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        void variables(Map<String, BigDecimal> variables) {
+            varint(body, variables.size());
+            variables.forEach((name, value) -> {
+                varint(body, string(name));
+                varint(body, number(value));
+            });
+        }
+
+        void functions(Map<String, Function> functions) {
+            varint(body, functions.size());
+            functions.forEach((name, function) -> {
+                varint(body, string(name));
+                varint(body, function.params().size());
+                for (String param : function.params()) varint(body, string(param));
+                tree(function.body());
+            });
+        }
+
+        private void tree(NodeType root) {
+            int[] count = {0};
+            ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+            Trees.rebuild(root, (node, children) -> {
+                node(nodes, node);
+                count[0]++;
+                return node;
+            });
+            varint(body, count[0]);
+            body.writeBytes(nodes.toByteArray());
+        }
+
+        private void node(ByteArrayOutputStream out, NodeType node) {
+            switch (node) {
+                case NumberNode n -> tag(out, NUMBER, number(n.value()));
+                case VariableNode v -> tag(out, VARIABLE, string(v.variable().identifier()));
+                case LocalNode l -> tag(out, LOCAL, string(l.variable().identifier()), l.slot());
+                case GlobalNode g -> tag(out, GLOBAL, string(g.variable().identifier()));
+                case BinaryOperationNode b -> tag(out, BINARY, b.operator().ordinal());
+                case PrefixOperationNode p -> tag(out, PREFIX, p.prefix().ordinal());
+                case SuffixOperationNode s -> tag(out, SUFFIX, s.suffix().ordinal());
+                case FunctionNode f -> tag(out, FUNCTION, string(f.function().identifier()), f.args().size());
+                case CallNode c -> tag(out, CALL, string(c.function().identifier()), c.args().size());
+                case NativeFunctionNode n -> tag(out, NATIVE, string(n.function().identifier()), n.args().size());
+            }
+        }
+
+        private static void tag(ByteArrayOutputStream out, byte tag, int... operands) {
+            out.write(tag);
+            for (int operand : operands) varint(out, operand);
+        }
+
+        private int string(String value) {
+            return strings.computeIfAbsent(value, v -> strings.size());
+        }
+
+        private int number(BigDecimal value) {
+            return numbers.computeIfAbsent(value, v -> numbers.size());
+        }
+
+        byte[] payload() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + strings.size() * 8 + numbers.size() * 8);
+            varint(out, strings.size());
+            for (String value : strings.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                varint(out, bytes.length);
+                out.writeBytes(bytes);
+            }
+            varint(out, numbers.size());
+            for (BigDecimal value : numbers.keySet()) {
+                byte[] unscaled = value.unscaledValue().toByteArray();
+                varint(out, (value.scale() << 1) ^ (value.scale() >> 31));
+                varint(out, unscaled.length);
+                out.writeBytes(unscaled);
+            }
+            out.writeBytes(body.toByteArray());
+            return out.toByteArray();
+        }
+    }
+
+    private static final class Decoder {
+        private final ByteBuffer in;
+        private String[] strings;
+        private BigDecimal[] numbers;
+        private IdentifierToken[] identifiers;
+
+        Decoder(ByteBuffer in) {
+            this.in = in;
+        }
+
+        Library library() {
+            strings = new String[varint()];
+            identifiers = new IdentifierToken[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[varint()];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            numbers = new BigDecimal[varint()];
+            for (int i = 0; i < numbers.length; i++) {
+                int zigzag = varint();
+                int scale = (zigzag >>> 1) ^ -(zigzag & 1);
+                byte[] unscaled = new byte[varint()];
+                in.get(unscaled);
+                numbers[i] = new BigDecimal(new BigInteger(unscaled), scale);
+            }
+
+            int variableCount = varint();
+            Map<String, BigDecimal> variables = new HashMap<>(variableCount * 2);
+            for (int i = 0; i < variableCount; i++) {
+                variables.put(strings[varint()], numbers[varint()]);
+            }
+
+            int functionCount = varint();
+            Map<String, Function> functions = new HashMap<>(functionCount * 2);
+            for (int i = 0; i < functionCount; i++) {
+                String name = strings[varint()];
+                String[] params = new String[varint()];
+                for (int p = 0; p < params.length; p++) params[p] = strings[varint()];
+                functions.put(name, new Function(List.of(params), tree()));
+            }
+
+            if (in.hasRemaining()) throw new CalculatorException("Trailing data in library file");
+            return new Library(functions, variables);
+        }
+
+        private NodeType tree() {
+            int count = varint();
+            ArrayList<NodeType> stack = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                byte tag = in.get();
+                NodeType node = switch (tag) {
+                    case NUMBER -> new NumberNode(numbers[varint()]);
+                    case VARIABLE -> new VariableNode(identifier(varint()));
+                    case LOCAL -> new LocalNode(identifier(varint()), varint());
+                    case GLOBAL -> {
+                        IdentifierToken variable = identifier(varint());
+                        yield new GlobalNode(variable, Slots.variable(variable.identifier()));
+                    }
+                    case BINARY -> {
+                        OperatorToken operator = OPERATORS[varint()];
+                        NodeType right = pop(stack);
+                        yield new BinaryOperationNode(pop(stack), right, operator);
+                    }
+                    case PREFIX -> new PrefixOperationNode(pop(stack), PREFIXES[varint()]);
+                    case SUFFIX -> new SuffixOperationNode(pop(stack), SUFFIXES[varint()]);
+                    case FUNCTION -> {
+                        IdentifierToken function = identifier(varint());
+                        yield new FunctionNode(function, args(stack, varint()));
+                    }
+                    case CALL -> {
+                        IdentifierToken function = identifier(varint());
+                        yield new CallNode(function, Slots.function(function.identifier()), args(stack, varint()));
+                    }
+                    case NATIVE -> {
+                        IdentifierToken function = identifier(varint());
+                        NativeFunction target = NativeFunctions.find(function.identifier());
+                        if (target == null) throw new CalculatorException("Unknown native function: " + function.identifier());
+                        yield new NativeFunctionNode(function, target, args(stack, varint()));
+                    }
+                    default -> throw new CalculatorException("Unknown node tag " + tag);
+                };
+                stack.add(node);
+            }
+            if (stack.size() != 1) throw new CalculatorException("Malformed function body");
+            return stack.get(0);
+        }
+
+        private static NodeType pop(ArrayList<NodeType> stack) {
+            return stack.remove(stack.size() - 1);
+        }
+
+        private static List<NodeType> args(ArrayList<NodeType> stack, int count) {
+            List<NodeType> tail = stack.subList(stack.size() - count, stack.size());
+            List<NodeType> args = List.copyOf(tail);
+            tail.clear();
+            return args;
+        }
+
+        // Tokens are immutable, so one per name serves every node that uses it.
+        private IdentifierToken identifier(int index) {
+            IdentifierToken token = identifiers[index];
+            if (token == null) token = identifiers[index] = new IdentifierToken(strings[index]);
+            return token;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new CalculatorException("Malformed varint in library file");
+        }
+    }
+
+    private static void varint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,148 @@
+package streaming;
+
+import calculator.Calculator.CalcResult;
+import calculator.CalculatorSession;
+import calculator.ResultFormatter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Evaluates ';'- or newline-separated statements from a channel and writes one result line per statement, in order.
+// Only a fixed read buffer, the statement being built and a bounded queue are held in memory.
+public class StreamEvaluator {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_STATEMENT_LENGTH = 1 << 20;
+
+    // Sentinel marking the end of input; compared by identity.
+    private static final String END = new String("END");
+
+    private final CalculatorSession session;
+    private final ResultFormatter formatter;
+
+    public StreamEvaluator() {
+        this(new CalculatorSession());
+    }
+
+    public StreamEvaluator(CalculatorSession session) {
+        this(session, new ResultFormatter());
+    }
+
+    // Results are written with the separators of 'formatter', which the evaluating thread then owns.
+    public StreamEvaluator(CalculatorSession session, ResultFormatter formatter) {
+        this.session = session;
+        this.formatter = formatter;
+    }
+
+    public long evaluate(Path input, OutputStream output) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            return evaluate(channel, output);
+        }
+    }
+
+    public long evaluate(ReadableByteChannel input, OutputStream output) throws IOException {
+        BlockingQueue<String> statements = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        IOException[] readFailure = new IOException[1];
+
+        Thread reader = Thread.ofPlatform().name("calc-stream-reader").daemon().start(() -> {
+            try {
+                split(input, statements);
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                statements.put(END);
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            while (true) {
+                String statement = statements.take();
+                if (statement == END) break;
+                writeResult(statement, writer);
+                writer.write('\n');
+                count++;
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            reader.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while evaluating stream", e);
+        } finally {
+            reader.interrupt();
+            writer.flush();
+        }
+
+        if (readFailure[0] != null) throw readFailure[0];
+        return count;
+    }
+
+    // Formatted straight into the writer's buffer; no String per result.
+    private void writeResult(String statement, Writer writer) throws IOException {
+        CalcResult result;
+        try {
+            result = session.calc(statement);
+        } catch (Exception e) {
+            writer.write("Error: " + e.getMessage());
+            return;
+        }
+        result.commas(formatter, writer);
+    }
+
+    private static void split(ReadableByteChannel input, BlockingQueue<String> statements) throws IOException, InterruptedException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        StringBuilder statement = new StringBuilder();
+        boolean eof = false;
+
+        while (!eof) {
+            eof = input.read(bytes) < 0;
+            bytes.flip();
+            decoder.decode(bytes, chars, eof);
+            if (eof) decoder.flush(chars);
+            bytes.compact();
+
+            chars.flip();
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == ';' || c == '\n') {
+                    emit(statement, statements);
+                } else if (statement.length() < MAX_STATEMENT_LENGTH) {
+                    statement.append(c);
+                } else {
+                    throw new IOException("Statement longer than " + MAX_STATEMENT_LENGTH + " characters");
+                }
+            }
+            chars.clear();
+        }
+        emit(statement, statements);
+    }
+
+    private static void emit(StringBuilder statement, BlockingQueue<String> statements) throws InterruptedException {
+        String text = statement.toString().trim();
+        statement.setLength(0);
+        if (!text.isEmpty()) statements.put(text);
+    }
+}
@@ -0,0 +1,27 @@
+package calculator;
+
+import evaluator.EvaluationContext;
+import org.junit.jupiter.api.Test;
+
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExpressionCacheTest {
+    // Only a different precision invalidates the trees, not a new MathContext object equal to the old one.
+    @Test
+    void equalMathContextKeepsEntries() {
+        EvaluationContext context = new EvaluationContext();
+        ExpressionCache cache = new ExpressionCache(16, context);
+        context.setMathContext(new MathContext(34));
+        cache.get("1/3");
+        context.setMathContext(new MathContext(34));
+        cache.get("1/3");
+        assertEquals(1, cache.hits());
+
+        context.setMathContext(new MathContext(16));
+        cache.get("1/3");
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+}
@@ -0,0 +1,137 @@
+package checks;
+
+import evaluator.EvaluationContext;
+import parser.Node.NodeType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static lexer.Lexer.tokenize;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static parser.Parser.parse;
+
+// Random expressions and comparisons for the tests that check two implementations give the same results.
+public final class Differential {
+    public static final int EXPRESSIONS = 20_000;
+    private static final int REPORTED_FAILURES = 5;
+
+    private static final String[] ATOMS = {"0", "1", "2", "3", "7", "10", "0.5", "1.25", "12345678901234567890",
+            "1.000000000000000001", "x", "y", "pi", "e", "4!", "2k"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "^"};
+    private static final String[] NATIVES = {"abs(#)", "floor(#)", "ceil(#)", "round(#)", "round(#,3)", "min(#,#)",
+            "max(#,#,#)", "sum(#,#)", "avg(#,#)", "sqrt(#)", "exp(#)", "ln(#)", "log10(#)", "sin(#)", "cos(#)",
+            "atan(#)", "nCr(#,3)", "nPr(#,2)", "pow(#,2)"};
+    private static final String[] FUNCTIONS = {"cube(#)", "power(#,2)", "test(#,#,#)", "mix(#,#)"};
+
+    private Differential() {
+    }
+
+    @FunctionalInterface
+    public interface Backend {
+        Supplier<BigDecimal> prepare(NodeType tree);
+    }
+
+    // Compares the two backends on EXPRESSIONS random expressions from a fixed seed.
+    public static void compareRandom(List<String> failures, long seed, Backend expected, Backend actual) {
+        Random random = new Random(seed);
+        for (int i = 0; i < EXPRESSIONS; i++) {
+            String input = expression(random, 4);
+            compare(failures, input, parse(tokenize(input)), expected, actual);
+        }
+    }
+
+    // Preparing is part of the comparison, so a backend that fails to compile or fold a tree is reported too.
+    public static void compare(List<String> failures, String input, NodeType tree, Backend expected, Backend actual) {
+        Supplier<BigDecimal> left;
+        Supplier<BigDecimal> right;
+        try {
+            left = expected.prepare(tree);
+            right = actual.prepare(tree);
+        } catch (RuntimeException e) {
+            failures.add(abbreviate(input) + ": preparing threw " + describe(e));
+            return;
+        }
+        compare(failures, input, left, right);
+    }
+
+    // Equal values compare equal whatever their scale; an error on one side must be an error on the other.
+    public static void compare(List<String> failures, String input, Supplier<BigDecimal> expected, Supplier<BigDecimal> actual) {
+        Object left = outcome(expected);
+        Object right = outcome(actual);
+        boolean same = left instanceof BigDecimal l && right instanceof BigDecimal r
+                ? l.compareTo(r) == 0
+                : left instanceof RuntimeException && right instanceof RuntimeException;
+        if (!same) failures.add(abbreviate(input) + ": expected " + describe(left) + ", got " + describe(right));
+    }
+
+    public static void assertNoFailures(List<String> failures) {
+        assertTrue(failures.isEmpty(), () -> failures.size() + " comparisons failed:\n    "
+                + String.join("\n    ", failures.subList(0, Math.min(failures.size(), REPORTED_FAILURES))));
+    }
+
+    // The value, or the RuntimeException thrown instead.
+    public static Object outcome(Supplier<?> supplier) {
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    public static String abbreviate(String text) {
+        return text.length() <= 120 ? text : text.substring(0, 117) + "...";
+    }
+
+    private static String describe(Object outcome) {
+        if (outcome instanceof BigDecimal value) return abbreviate(value.toString());
+        return outcome.getClass().getSimpleName() + "(" + ((RuntimeException) outcome).getMessage() + ")";
+    }
+
+    // Operators, natives, built-in and user functions over small literals, long literals, constants and variables.
+    // Powers only take small exponents so no expression runs away.
+    public static String expression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(5) == 0) return ATOMS[random.nextInt(ATOMS.length)];
+        return switch (random.nextInt(6)) {
+            case 0, 1, 2 -> {
+                String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+                String right = operator.equals("^") ? String.valueOf(random.nextInt(4)) : expression(random, depth - 1);
+                yield "(" + expression(random, depth - 1) + operator + right + ")";
+            }
+            case 3 -> "-" + expression(random, depth - 1);
+            case 4 -> call(random, NATIVES[random.nextInt(NATIVES.length)], depth);
+            default -> call(random, FUNCTIONS[random.nextInt(FUNCTIONS.length)], depth);
+        };
+    }
+
+    private static String call(Random random, String template, int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '#') sb.append(expression(random, depth - 1));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // x and y for the variables in expressions, and mix, a user function that reads a global, for the calls.
+    public static EvaluationContext context(int digits) {
+        EvaluationContext context = new EvaluationContext();
+        context.setMathContext(new MathContext(digits));
+        context.setVariable("x", new BigDecimal("2.5"));
+        context.setVariable("y", new BigDecimal("-3"));
+        context.defineFunction("mix", List.of("a", "b"), "a*b-a/(b+0.5)+x");
+        return context;
+    }
+
+    public static String chain(int terms) {
+        StringBuilder sb = new StringBuilder("1");
+        String operators = "+-*/";
+        for (int i = 1; i < terms; i++) {
+            sb.append(operators.charAt(i % operators.length())).append(i % 9 + 1);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package compiler;
+
+import compiler.DoubleCompiler.CompiledDouble;
+import evaluator.EvaluationContext;
+import org.junit.jupiter.api.Test;
+import parser.Node.NodeType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static checks.Differential.*;
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+
+class ColumnCompilerTest {
+    // Column kernels against the DoubleCompiler row by row, bit for bit, over rows that include zeros, negatives
+    // and a range that doesn't start at a block boundary.
+    @Test
+    void columnsMatchRows() {
+        EvaluationContext context = context(0);
+        int rows = 3000;
+        double[] x = new double[rows];
+        double[] y = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = i * 0.37 - 100;
+            y[i] = i % 17 - 3;
+        }
+        double[][] columns = {x, y};
+        List<String> inputs = List.of("x", "y");
+        int from = 700;
+
+        List<String> failures = new ArrayList<>();
+        Random random = new Random(6);
+        for (int i = 0; i < EXPRESSIONS / 10; i++) {
+            String input = expression(random, 3);
+            NodeType tree = parse(tokenize(input));
+            Object expected = outcome(() -> {
+                CompiledDouble compiled = DoubleCompiler.compile(tree, inputs, context);
+                double[] result = new double[rows];
+                for (int row = from; row < rows; row++) result[row] = compiled.evaluate(new double[]{x[row], y[row]}, context);
+                return result;
+            });
+            Object actual = outcome(() -> {
+                double[] result = new double[rows];
+                ColumnCompiler.compile(tree, inputs, context).evaluate(columns, result, from, rows, context);
+                return result;
+            });
+            boolean same = expected instanceof double[] e && actual instanceof double[] a
+                    ? Arrays.equals(e, a)
+                    : expected instanceof RuntimeException && actual instanceof RuntimeException;
+            if (!same) failures.add(abbreviate(input) + ": columns and rows differ");
+        }
+        assertNoFailures(failures);
+    }
+}
@@ -0,0 +1,71 @@
+package compiler;
+
+import evaluator.Budget;
+import evaluator.EvaluationContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import parser.Node.NodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static checks.Differential.*;
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Compiled closures against the tree-walker, which defines the results.
+class CompilerTest {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 34})
+    void closuresMatchEvaluator(int digits) {
+        EvaluationContext context = context(digits);
+        List<String> failures = new ArrayList<>();
+        compareRandom(failures, 1, tree -> () -> evaluate(resolve(tree), context),
+                tree -> () -> Compiler.compile(tree, context).evaluate(Compiler.emptyFrame(), context));
+        assertNoFailures(failures);
+    }
+
+    // Past the closure nesting limit the compiler hands the tree to the evaluator; both sides must still agree.
+    @Test
+    void deepTreesMatchEvaluator() {
+        EvaluationContext context = context(0);
+        List<String> failures = new ArrayList<>();
+        List<String> inputs = List.of(chain(2000), "(".repeat(1000) + "1+x)*2".repeat(1000),
+                "1" + "^1".repeat(5000), "power(".repeat(300) + "1.5" + ",1)".repeat(300));
+        for (String input : inputs) {
+            NodeType tree = parse(tokenize(input));
+            compare(failures, input, () -> evaluate(resolve(tree), context),
+                    () -> Compiler.compile(tree, context).evaluate(Compiler.emptyFrame(), context));
+        }
+        assertNoFailures(failures);
+    }
+
+    // Inlined user functions are charged a call like the evaluator's, so an operation limit stops both at the same
+    // point: every limit up to the one an expression needs gives the same outcome on both sides.
+    @Test
+    void budgetChargedLikeEvaluator() {
+        EvaluationContext context = context(0);
+        List<String> failures = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            String input = expression(random, 3);
+            NodeType tree = parse(tokenize(input));
+            Compiler.CompiledExpression compiled = Compiler.compile(tree, context);
+            for (int operations = 1; operations <= 64; operations++) {
+                context.setBudget(new Budget(Budget.DEFAULT.maxDigits(), Budget.DEFAULT.maxScale(), Budget.DEFAULT.maxExponent(), operations, null));
+                compare(failures, input + " within " + operations + " operations", () -> {
+                    context.startBudget();
+                    return evaluate(resolve(tree), context);
+                }, () -> {
+                    context.startBudget();
+                    return compiled.evaluate(Compiler.emptyFrame(), context);
+                });
+            }
+        }
+        assertNoFailures(failures);
+    }
+}
@@ -0,0 +1,36 @@
+package compiler;
+
+import evaluator.EvaluationContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static checks.Differential.context;
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+class DoubleCompilerTest {
+    // Calls whose arguments are calls at the same level, and bodies that call others, each reading their own frame.
+    // A frame read by the wrong call would be off by far more than rounding, so the tree-walker's value within a
+    // few ulps is the check.
+    @Test
+    void nestedCallsKeepTheirArguments() {
+        EvaluationContext context = context(0);
+        context.defineFunction("first", List.of("a", "b", "c", "d"), "a+0*(b+c+d)");
+        String[] inputs = {
+                "test(test(1,2,3),test(4,5,6),test(7,8,9))",
+                "mix(mix(x,y),mix(y,x))+mix(power(2,3),cube(2))",
+                "max(1,max(2,x,3),min(y,4,5),sum(6,7,8))",
+                "first(first(1,2,3,4),first(5,6,7,8),sum(9,10,11),avg(12,13,14))",
+                "test(max(1,2,3),min(4,5,6),round(7.25,1))+pow(power(2,2),nCr(4,2))",
+        };
+        for (String input : inputs) {
+            double expected = evaluate(resolve(parse(tokenize(input))), context).doubleValue();
+            double actual = DoubleCompiler.compile(parse(tokenize(input)), context).evaluate(DoubleCompiler.emptyFrame(), context);
+            assertEquals(expected, actual, Math.abs(expected) * 1e-12, input);
+        }
+    }
+}
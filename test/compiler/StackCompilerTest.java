@@ -0,0 +1,25 @@
+package compiler;
+
+import evaluator.EvaluationContext;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static checks.Differential.*;
+import static evaluator.Evaluator.evaluate;
+import static resolver.Resolver.resolve;
+
+// Flat stack-machine programs against the tree-walker.
+class StackCompilerTest {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 34})
+    void programsMatchEvaluator(int digits) {
+        EvaluationContext context = context(digits);
+        List<String> failures = new ArrayList<>();
+        compareRandom(failures, 2, tree -> () -> evaluate(resolve(tree), context),
+                tree -> () -> StackCompiler.compile(tree).evaluate(Compiler.emptyFrame(), context));
+        assertNoFailures(failures);
+    }
+}
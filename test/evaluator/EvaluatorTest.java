@@ -0,0 +1,80 @@
+package evaluator;
+
+import Exceptions.BudgetExceededException;
+import identifier.NativeFunctions;
+import identifier.NativeFunctions.NativeFunction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static checks.Differential.*;
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+class EvaluatorTest {
+    // Every native result is rounded to the session's precision, like an operator's. Arguments are short and
+    // long values, constants computed at the precision and places beyond it, taken one, two and three at a time.
+    @ParameterizedTest
+    @ValueSource(ints = {16, 34, 100})
+    void nativesRoundedToPrecision(int digits) {
+        String[] arguments = {"0.1234567890123456", "1234567890.123456", "200", "100", "40", "3", "2.5", "-7.25", "pi", "e"};
+        EvaluationContext context = context(digits);
+        List<String> failures = new ArrayList<>();
+        for (NativeFunction function : NativeFunctions.getNativeFunctions()) {
+            for (int count = 1; count <= 3; count++) {
+                if (!function.accepts(count)) continue;
+                for (int combination = 0; combination < Math.pow(arguments.length, count); combination++) {
+                    StringBuilder input = new StringBuilder(function.name()).append('(');
+                    for (int i = 0, rest = combination; i < count; i++, rest /= arguments.length) {
+                        input.append(i > 0 ? "," : "").append(arguments[rest % arguments.length]);
+                    }
+                    String call = input.append(')').toString();
+                    Object result = outcome(() -> evaluate(resolve(parse(tokenize(call))), context));
+                    if (result instanceof BigDecimal value && value.precision() > digits) {
+                        failures.add(call + ": " + value.precision() + " digits, " + abbreviate(value.toString()));
+                    }
+                }
+            }
+        }
+        assertNoFailures(failures);
+    }
+
+    // Range reduction needs pi to as many digits as the argument has, which the estimate charges for.
+    @Test
+    void largeArgumentsRefusedByDigits() {
+        EvaluationContext context = context(34);
+        context.setBudget(new Budget(10_000, Budget.DEFAULT.maxScale(), Budget.DEFAULT.maxExponent(), Budget.DEFAULT.maxOperations(), null));
+        for (String input : new String[]{"sin(10^20000)", "cos(10^20000)", "tan(10^20000)", "ln(10^20000)", "pow(2, 10^20000+0.5)"}) {
+            assertThrows(BudgetExceededException.class, () -> evaluate(resolve(parse(tokenize(input))), context), input);
+        }
+    }
+
+    // One native call can run far past the budget's time limit, so BigMath polls the deadline as it works.
+    @Test
+    void longNativeCallsStopAtDeadline() {
+        EvaluationContext context = context(34);
+        context.setBudget(new Budget(Budget.DEFAULT.maxDigits(), Budget.DEFAULT.maxScale(), Budget.DEFAULT.maxExponent(),
+                Budget.DEFAULT.maxOperations(), Duration.ofMillis(200)));
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(BudgetExceededException.class, () -> evaluate(resolve(parse(tokenize("sin(10^300000)"))), context)));
+    }
+
+    // Names are read by slot only; a tree that skipped the Resolver is an error, not a lookup by name.
+    @Test
+    void unresolvedTreesRefused() {
+        EvaluationContext context = context(0);
+        for (String input : new String[]{"x+1", "cube(2)"}) {
+            assertThrows(IllegalStateException.class, () -> evaluate(parse(tokenize(input)), context), input);
+            assertThrows(IllegalStateException.class, () -> evaluate(parse(tokenize(input)), context, 0), input);
+        }
+    }
+}
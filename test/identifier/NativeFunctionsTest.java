@@ -0,0 +1,78 @@
+package identifier;
+
+import calculator.BatchExpression;
+import calculator.Calculator;
+import evaluator.Evaluator;
+import identifier.NativeFunctions.NativeFunction;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static checks.Differential.assertNoFailures;
+
+class NativeFunctionsTest {
+    private static final int[] PLACES = {0, 1, 2, 3, 10, 15, 20, 400};
+
+    // The double backend of round against HALF_UP on the exact value of each double.
+    @Test
+    void doubleRoundMatchesBigDecimal() {
+        NativeFunction round = NativeFunctions.find("round");
+        double[] values = roundingValues();
+        List<String> failures = new ArrayList<>();
+        for (int places : PLACES) {
+            for (double value : values) {
+                BigDecimal[] exact = {new BigDecimal(value), BigDecimal.valueOf(places)};
+                double expected = round.apply(exact, Evaluator.MATH_CONTEXT).doubleValue();
+                double actual = round.apply(new double[]{value, places});
+                if (!roundAgrees(expected, actual, places)) failures.add("round(" + value + "," + places + "): expected " + expected + ", got " + actual);
+            }
+        }
+        assertNoFailures(failures);
+    }
+
+    // Batches of doubles go through the column kernels, or the compiled doubles they fall back to.
+    @Test
+    void batchRoundMatchesBigDecimal() {
+        double[] values = roundingValues();
+        BigDecimal[] exact = new BigDecimal[values.length];
+        for (int i = 0; i < values.length; i++) exact[i] = new BigDecimal(values[i]);
+        List<String> failures = new ArrayList<>();
+        for (int places : PLACES) {
+            BatchExpression batch = Calculator.batch(places == 0 ? "round(x)" : "round(x," + places + ")", List.of("x"));
+            BigDecimal[] expected = batch.evaluate(Map.of("x", exact));
+            double[] actual = batch.evaluateDouble(Map.of("x", values));
+            for (int i = 0; i < values.length; i++) {
+                if (!roundAgrees(expected[i].doubleValue(), actual[i], places)) {
+                    failures.add("round(" + values[i] + "," + places + "): expected " + expected[i].doubleValue() + ", got " + actual[i]);
+                }
+            }
+        }
+        assertNoFailures(failures);
+    }
+
+    // Halves of both signs, values past 2^52 and Long.MAX_VALUE, and random values of any size.
+    private static double[] roundingValues() {
+        double[] values = new double[20_000];
+        double[] edges = {-2.5, 2.5, -0.5, 0.5, 1.5, -1.5, 0.49999999999999994, -0.49999999999999994, 1e20, -1e20,
+                0x1p52 + 1, 0x1p53 - 1, 9.3e18, 1e300, -1e-300, 0, 1.005, 123.456, 2.675, -1234.5678};
+        Random random = new Random(5);
+        for (int i = 0; i < values.length; i++) {
+            if (i < edges.length) values[i] = edges[i];
+            else if (i % 3 == 0) values[i] = random.nextInt(2_000_001) - 1_000_000 + 0.5;
+            else values[i] = (random.nextDouble() * 2 - 1) * Math.pow(10, random.nextInt(41) - 20);
+        }
+        return values;
+    }
+
+    // Whole numbers must match exactly. With places, value * 10^places is itself rounded to a double, which can
+    // move a value just off a half onto it, so one unit in the last place is allowed.
+    private static boolean roundAgrees(double expected, double actual, int places) {
+        if (expected == actual) return true;
+        if (places == 0) return false;
+        return Math.abs(expected - actual) <= Math.pow(10, -places) + Math.ulp(expected);
+    }
+}
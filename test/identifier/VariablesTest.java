@@ -0,0 +1,25 @@
+package identifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VariablesTest {
+    // Constants are shared while their precision is in use and recomputed, equal, once enough others displaced it.
+    @Test
+    void constantsCachedForRecentPrecisions() {
+        MathContext mc = new MathContext(40);
+        BigDecimal[] first = Variables.constantsAt(mc);
+        assertSame(first, Variables.constantsAt(new MathContext(40)));
+
+        for (int digits = 41; digits < 80; digits++) Variables.constantsAt(new MathContext(digits));
+        BigDecimal[] again = Variables.constantsAt(mc);
+        assertNotSame(first, again);
+        assertArrayEquals(first, again);
+    }
+}
@@ -0,0 +1,68 @@
+package optimizer;
+
+import checks.Differential.Backend;
+import evaluator.Budget;
+import evaluator.EvaluationContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import parser.Node.NodeType;
+
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static checks.Differential.*;
+import static evaluator.Evaluator.evaluate;
+import static lexer.Lexer.tokenize;
+import static optimizer.Optimizer.optimize;
+import static parser.Parser.parse;
+import static resolver.Resolver.resolve;
+
+// Folded trees against the trees they were folded from.
+class OptimizerTest {
+    // Session trees are folded for the session's MathContext: everything when exact, short values otherwise.
+    @ParameterizedTest
+    @ValueSource(ints = {0, 16, 34})
+    void foldedForSessionMatchesUnfolded(int digits) {
+        EvaluationContext context = context(digits);
+        List<String> failures = new ArrayList<>();
+        compareRandom(failures, 3, tree -> () -> evaluate(resolve(tree), context), optimized(tree -> optimize(tree, context.getMathContext()), context));
+        assertNoFailures(failures);
+    }
+
+    // Function bodies are folded once and evaluated at whatever precision the caller has.
+    @ParameterizedTest
+    @ValueSource(ints = {0, 16, 34})
+    void foldedForAnyPrecisionMatchesUnfolded(int digits) {
+        EvaluationContext context = context(digits);
+        List<String> failures = new ArrayList<>();
+        compareRandom(failures, 4, tree -> () -> evaluate(resolve(tree), context), optimized(tree -> optimize(tree), context));
+        assertNoFailures(failures);
+    }
+
+    // Work over the default budget is left in the tree, so the evaluation's own budget refuses it as before.
+    @Test
+    void workOverBudgetIsLeftToEvaluation() {
+        EvaluationContext context = context(0);
+        context.setBudget(Budget.DEFAULT);
+        List<String> failures = new ArrayList<>();
+        for (String input : List.of("9^99999999", "9^99999999+x", "123456!", "2*123456!", "nPr(10^18,100000)", "1/0")) {
+            NodeType tree = parse(tokenize(input));
+            for (UnaryOperator<NodeType> folded : List.<UnaryOperator<NodeType>>of(t -> optimize(t), t -> optimize(t, MathContext.UNLIMITED))) {
+                context.startBudget();
+                compare(failures, input, tree, t -> () -> evaluate(resolve(t), context), optimized(folded, context));
+            }
+        }
+        assertNoFailures(failures);
+    }
+
+    // Folds when the tree is prepared, so compare never sees a failure of the optimizer itself.
+    private static Backend optimized(UnaryOperator<NodeType> optimizer, EvaluationContext context) {
+        return tree -> {
+            NodeType folded = optimizer.apply(tree);
+            return () -> evaluate(resolve(folded), context);
+        };
+    }
+}